@@ -0,0 +1,81 @@
+package amazed.jmh;
+
+import amazed.bench.BenchmarkMaps;
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <code>MazeBenchmark</code> measures the primitives every solver
+ * relies on: reading a map into a board, and
+ * <code>Maze.neighbors</code>.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// without board snapshots, readMap measures parsing
+@Fork(value = 1, jvmArgsAppend = "-Damazed.snapshot.dir=")
+public class MazeBenchmark
+{
+    @Param({ "small", "medium", "generated-255", "generated-511" })
+    public String map;
+
+    private String file;
+    private Maze maze;
+    // identifiers of all accessible nodes
+    private int[] ids;
+
+    @Setup
+    public void setUp()
+    throws IOException
+    {
+        file = BenchmarkMaps.file(map);
+        maze = Maze.load(file);
+        int n = 0;
+        ids = new int[maze.rows() * maze.cols()];
+        for (int row = 0; row < maze.rows(); row++) {
+            for (int col = 0; col < maze.cols(); col++) {
+                if (maze.isAccessible(row, col))
+                    ids[n++] = maze.cellId(row, col);
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Reads and parses the map file into a new board.
+     */
+    @Benchmark
+    public Maze readMap()
+    {
+        return Maze.load(file);
+    }
+
+    /**
+     * Computes the neighbors of every accessible node once.
+     */
+    @Benchmark
+    public void neighbors(Blackhole blackhole)
+    {
+        for (int id: ids)
+            blackhole.consume(maze.neighbors(id));
+    }
+}
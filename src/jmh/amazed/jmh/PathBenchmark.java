@@ -0,0 +1,78 @@
+package amazed.jmh;
+
+import amazed.bench.BenchmarkMaps;
+import amazed.maze.Maze;
+import amazed.solver.SequentialSolver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>PathBenchmark</code> measures
+ * <code>SequentialSolver.pathFromTo</code>, the reconstruction of a
+ * path from the predecessor map left by a finished search.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark
+{
+    @Param({ "small", "medium", "generated-255", "generated-511" })
+    public String map;
+
+    private Tracer tracer;
+    private int goal;
+
+    // exposes the path reconstruction of a solver that has run
+    private static class Tracer extends SequentialSolver
+    {
+        private static final long serialVersionUID = 1L;
+
+        Tracer(Maze maze)
+        {
+            super(maze);
+        }
+
+        List<Integer> trace(int to)
+        {
+            return pathFromTo(start, to);
+        }
+    }
+
+    @Setup
+    public void setUp()
+    throws IOException
+    {
+        tracer = new Tracer(BenchmarkMaps.load(map));
+        List<Integer> path = tracer.compute();
+        if (path == null)
+            throw new IllegalStateException("No goal reachable in map " + map);
+        goal = path.get(path.size() - 1);
+    }
+
+    /**
+     * Reconstructs the path from the start node to the goal found.
+     */
+    @Benchmark
+    public List<Integer> pathFromTo()
+    {
+        return tracer.trace(goal);
+    }
+}
@@ -0,0 +1,70 @@
+package amazed.jmh;
+
+import amazed.bench.BenchmarkMaps;
+import amazed.maze.Maze;
+import amazed.solver.Solvers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>SolverBenchmark</code> measures a whole search of a maze by
+ * the sequential solver and by the fork/join solver at several
+ * <code>forkAfter</code> values. Mazes are loaded without animation,
+ * so no time is spent sleeping between moves.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+// fork/join tasks that join their children nest on the worker's
+// stack, deeper than the default stack allows on generated mazes
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class SolverBenchmark
+{
+    @Param({ "small", "medium", "generated-255", "generated-511" })
+    public String map;
+
+    // a solver name, followed by -N for the fork/join solver forking after N steps
+    @Param({ "sequential", "parallel-1", "parallel-3", "parallel-9", "parallel-27" })
+    public String solver;
+
+    private Maze maze;
+    private String name;
+    private int forkAfter;
+
+    @Setup
+    public void setUp()
+    throws IOException
+    {
+        maze = BenchmarkMaps.load(map);
+        String[] parts = solver.split("-");
+        name = parts[0];
+        forkAfter = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+    }
+
+    /**
+     * Searches the maze with a new solver.
+     */
+    @Benchmark
+    public List<Integer> solve()
+    {
+        return ForkJoinPool.commonPool().invoke(Solvers.create(name, maze, forkAfter));
+    }
+}
@@ -1,8 +1,11 @@
 package amazed;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 
 import amazed.maze.Amazed;
+import amazed.solver.Solvers;
 
 
 public class Main
@@ -12,46 +15,64 @@ public class Main
         String className = MethodHandles.lookup().lookupClass().getName();
         System.out.println("A-mazed: finds and displays paths to goal in a maze.\n"
                            + "\n"
-                           + "usage: java " + className + " MAP [SOLVER] [PERIOD]\n"
+                           + "usage: java " + className + " MAP [SOLVER] [PERIOD|replay|frames-N]\n"
                            + "\n"
                            + " MAP    filename with map file\n"
-                           + " SOLVER 'sequential' or 'parallel-N' solver, forking after N steps\n"
-                           + " PERIOD time in millisecond between steps (0: don't animate)");
+                           + " SOLVER 'sequential', 'jps' (jump point search), 'bitbfs'\n"
+                           + "        (bit-parallel breadth-first search), 'hpa'\n"
+                           + "        (hierarchical path finding),\n"
+                           + "        'parallel-N' solver, forking after N steps,\n"
+                           + "        or 'cluster-N' solver, with N worker processes\n"
+                           + " PERIOD time in millisecond between steps (0: don't animate)\n"
+                           + " replay record the search at full speed, and replay it afterwards\n"
+                           + " frames-N record the search at full speed, and write N PNG\n"
+                           + "        frames of it to directory '" + FRAMES_DIR + "', without display");
         System.exit(0);
     }
 
-    private final static String SEQUENTIAL = "sequential";
     private final static String PARALLEL = "parallel";
+    private final static String CLUSTER = "cluster";
+    private final static String REPLAY = "replay";
+    private final static String FRAMES = "frames";
+    private final static String FRAMES_DIR = "frames";
+    // side of a cell in the frames, in pixels
+    private final static int FRAMES_CELL_SIZE = 25;
 
     private static String map;
-    private static boolean sequential = true;
+    private static String solver = Solvers.SEQUENTIAL;
     private static int forkAfter = 0;
     private static int period = 500;
+    private static boolean replay = false;
+    private static int frames = 0;
 
     private static void parseArguments(String[] args)
     {
         if (args.length >= 1) {
             map = args[0];
             if (args.length >= 2) {
-                String solver = args[1];
-                if (solver.equals(SEQUENTIAL))
-                    sequential = true;
-                else {
-                    sequential = false;
-                    String[] splitSolver = solver.split("-");
-                    if (splitSolver.length == 2) {
-                        if (splitSolver[0].equals(PARALLEL)) {
-                            try {
-                                forkAfter = Integer.parseInt(splitSolver[1]);
-                            } catch (NumberFormatException e) {
-                                printUsageAndExit();
-                            }
-                        } else
-                            printUsageAndExit();
-                    } else
+                String[] splitSolver = args[1].split("-");
+                solver = splitSolver[0];
+                if (solver.equals(PARALLEL) || solver.equals(CLUSTER)) {
+                    if (splitSolver.length != 2)
                         printUsageAndExit();
-                }
-                if (args.length >= 3) {
+                    try {
+                        forkAfter = Integer.parseInt(splitSolver[1]);
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                } else if (splitSolver.length != 1 || !Solvers.names().contains(solver))
+                    printUsageAndExit();
+                if (args.length >= 3 && args[2].equals(REPLAY))
+                    replay = true;
+                else if (args.length >= 3 && args[2].startsWith(FRAMES + "-")) {
+                    try {
+                        frames = Integer.parseInt(args[2].substring(FRAMES.length() + 1));
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                    if (frames < 1)
+                        printUsageAndExit();
+                } else if (args.length >= 3) {
                     try {
                         period = Integer.parseInt(args[2]);
                     } catch (NumberFormatException e) {
@@ -63,23 +84,22 @@ public class Main
             printUsageAndExit();
     }
 
-    private static final String bigMap = ".\\maps\\medium.map";
-    private static final String smallMap = ".\\maps\\small.map";
-    private static final boolean sSequential = false;
-    private static final int sForkAfter = 4;
-    private static final int sPeriodMS = 10;
-
     public static void main(String[] args)
-    throws InterruptedException
+    throws IOException
     {
-        //parseArguments(args);
-        Amazed amazed = new Amazed(bigMap, sSequential, sForkAfter, sPeriodMS);
+        parseArguments(args);
+        // frames are drawn offscreen, without any window
+        int delay = frames > 0 ? -1 : period;
+        Amazed amazed = new Amazed(map, solver, forkAfter, delay, replay || frames > 0);
         long start = System.currentTimeMillis();
         amazed.solve();
         long stop = System.currentTimeMillis();
         long elapsed = stop - start;
         System.out.println("Solving time: " + elapsed + " ms");
-        Thread.sleep(2500);
-        amazed.showSolution();
+        if (frames > 0) {
+            int written = amazed.writeFrames(new File(FRAMES_DIR), frames, FRAMES_CELL_SIZE);
+            System.out.println("Wrote " + written + " frames to " + FRAMES_DIR);
+        } else
+            amazed.showSolution();
     }
 }
@@ -0,0 +1,35 @@
+package amazed.batch;
+
+import amazed.maze.Maze;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+// one map going through the pipeline, filled in by its stages
+class BatchJob
+{
+    // marks the end of the jobs in a queue
+    static final BatchJob END = new BatchJob(null);
+
+    final Path file;
+    Maze maze;
+    RecursiveTask<List<Integer>> solver;
+    List<Integer> path;
+    long solveNanos;
+    boolean valid;
+    // the stage that failed, and why; null if none has
+    String failedStage;
+    Throwable error;
+
+    BatchJob(Path file)
+    {
+        this.file = file;
+    }
+
+    void fail(String stage, Throwable error)
+    {
+        this.failedStage = stage;
+        this.error = error;
+    }
+}
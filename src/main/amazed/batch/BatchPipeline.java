@@ -0,0 +1,249 @@
+package amazed.batch;
+
+import amazed.maze.Maze;
+import amazed.maze.PathCodec;
+import amazed.solver.HierarchicalIndex;
+import amazed.solver.HierarchicalSolver;
+import amazed.solver.Solvers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <code>BatchPipeline</code> solves all the map files of a directory
+ * in one JVM, overlapping the work on different maps.
+ * <p>
+ * Each map goes through five stages: reading and parsing its file,
+ * preprocessing (creating the solver, and building its index for the
+ * hierarchical solver), solving, validating the path found with
+ * {@link Maze#isValidPath}, and writing the result as a line of a
+ * CSV file. Each stage has its own threads, and passes maps to the
+ * next one through a bounded queue, so that reading files and
+ * solving proceed at the same time, while a slow stage holds back
+ * the stages before it instead of filling the heap with parsed
+ * mazes. A map that fails in a stage skips the following ones, and
+ * its error is written with its result. Solvers run in a
+ * <code>ForkJoinPool</code> of the pipeline with as many workers as
+ * solving threads, so that parallel solvers don't use more.
+ * <p>
+ * At the end, the pipeline reports, for every stage, the maps
+ * processed per second, the share of time its threads were busy, and
+ * the mean and largest depth of its input queue: the stage with the
+ * fullest queue is the bottleneck. Run without arguments to print
+ * the options.
+ */
+
+public class BatchPipeline
+{
+    private Path input;
+    private Path output = Paths.get("batch-results.csv");
+    private String solverName = Solvers.SEQUENTIAL;
+    private int forkAfter = 3;
+    private int queueCapacity = 16;
+    private int readThreads = 2;
+    private int preprocessThreads = 1;
+    private int solveThreads = Runtime.getRuntime().availableProcessors();
+    private int validateThreads = 1;
+    // the workers of the solvers, solveThreads of them
+    private ForkJoinPool solvePool;
+
+    private static void printUsageAndExit()
+    {
+        System.out.println("BatchPipeline: solves all map files of a directory.\n"
+                           + "\n"
+                           + "usage: java " + BatchPipeline.class.getName() + " DIR [OPTION VALUE]...\n"
+                           + "\n"
+                           + " DIR                    directory searched for files ending in .map\n"
+                           + " --output FILE          results, in CSV (default: batch-results.csv)\n"
+                           + " --solver S             solver name, or parallel-N (default: sequential)\n"
+                           + " --queue N              capacity of the queue before each stage (default: 16)\n"
+                           + " --read-threads N       threads reading and parsing maps (default: 2)\n"
+                           + " --preprocess-threads N threads preparing solvers (default: 1)\n"
+                           + " --solve-threads N      threads solving, and workers of their pool\n"
+                           + "                        (default: available processors)\n"
+                           + " --validate-threads N   threads validating paths (default: 1)");
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args)
+    {
+        if (args.length % 2 != 1)
+            printUsageAndExit();
+        input = Paths.get(args[0]);
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--output":
+                    output = Paths.get(value);
+                    break;
+                case "--solver":
+                    int dash = value.indexOf('-');
+                    solverName = dash < 0 ? value : value.substring(0, dash);
+                    if (dash >= 0)
+                        forkAfter = Integer.parseInt(value.substring(dash + 1));
+                    if (!Solvers.names().contains(solverName))
+                        printUsageAndExit();
+                    break;
+                case "--queue":
+                    queueCapacity = Integer.parseInt(value);
+                    break;
+                case "--read-threads":
+                    readThreads = Integer.parseInt(value);
+                    break;
+                case "--preprocess-threads":
+                    preprocessThreads = Integer.parseInt(value);
+                    break;
+                case "--solve-threads":
+                    solveThreads = Integer.parseInt(value);
+                    break;
+                case "--validate-threads":
+                    validateThreads = Integer.parseInt(value);
+                    break;
+                default:
+                    printUsageAndExit();
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (queueCapacity < 1 || readThreads < 1 || preprocessThreads < 1 || solveThreads < 1 || validateThreads < 1)
+            printUsageAndExit();
+    }
+
+    private static void read(BatchJob job)
+    throws IOException
+    {
+        String text = new String(Files.readAllBytes(job.file), StandardCharsets.UTF_8);
+        try (Reader reader = new StringReader(text)) {
+            job.maze = Maze.parse(reader, job.file.getFileName().toString());
+        }
+    }
+
+    private void preprocess(BatchJob job)
+    {
+        if (solverName.equals(Solvers.HIERARCHICAL))
+            job.solver = new HierarchicalSolver(job.maze,
+                                                HierarchicalIndex.build(job.maze, HierarchicalIndex.DEFAULT_CLUSTER_SIZE));
+        else
+            job.solver = Solvers.create(solverName, job.maze, forkAfter);
+    }
+
+    private void solve(BatchJob job)
+    {
+        long start = System.nanoTime();
+        job.path = solvePool.invoke(job.solver);
+        job.solveNanos = System.nanoTime() - start;
+        // the solver and its structures are no longer needed
+        job.solver = null;
+    }
+
+    private static void validate(BatchJob job)
+    {
+        job.valid = job.path != null && job.maze.isValidPath(job.path);
+    }
+
+    private static void write(BatchJob job, Writer out)
+    throws IOException
+    {
+        List<String> fields = new ArrayList<>();
+        fields.add(job.file.toString());
+        if (job.error != null) {
+            fields.add("");
+            fields.add("");
+            fields.add("");
+            fields.add("");
+            fields.add("");
+            fields.add("");
+            fields.add("");
+            fields.add(job.failedStage + ": " + job.error.toString().replace(',', ';').replace('\n', ' '));
+        } else {
+            fields.add(Integer.toString(job.maze.rows()));
+            fields.add(Integer.toString(job.maze.cols()));
+            fields.add(Boolean.toString(job.path != null));
+            fields.add(Boolean.toString(job.valid));
+            fields.add(job.path == null ? "0" : Integer.toString(job.path.size()));
+            fields.add(String.format(Locale.ROOT, "%.3f", job.solveNanos / 1e6));
+            fields.add(job.path == null ? "" : "\"" + PathCodec.encode(job.maze, job.path) + "\"");
+            fields.add("");
+        }
+        out.write(String.join(",", fields));
+        out.write('\n');
+        // the maze is no longer needed
+        job.maze = null;
+        job.path = null;
+    }
+
+    /**
+     * Runs the pipeline on all map files in the input directory.
+     *
+     * @return   the statistics of the stages, in CSV
+     * @throws IOException if the input directory cannot be listed, or
+     *         the output file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    String run()
+    throws IOException, InterruptedException
+    {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(path -> path.toString().endsWith(".map") && Files.isRegularFile(path))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+        List<BlockingQueue<BatchJob>> queues = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        solvePool = new ForkJoinPool(solveThreads);
+        try (Writer out = Files.newBufferedWriter(output)) {
+            out.write("file,rows,cols,found,valid,length,solve_ms,path,error\n");
+            List<Stage> stages = List.of(
+                new Stage("read", readThreads, BatchPipeline::read, queues.get(0), queues.get(1)),
+                new Stage("preprocess", preprocessThreads, this::preprocess, queues.get(1), queues.get(2)),
+                new Stage("solve", solveThreads, this::solve, queues.get(2), queues.get(3)),
+                new Stage("validate", validateThreads, BatchPipeline::validate, queues.get(3), queues.get(4)),
+                // a single writer keeps the lines of the output whole
+                new Stage("write", 1, job -> write(job, out), queues.get(4), null));
+            long start = System.nanoTime();
+            for (Stage stage: stages)
+                stage.start();
+            for (Path file: files)
+                queues.get(0).put(new BatchJob(file));
+            queues.get(0).put(BatchJob.END);
+            for (Stage stage: stages)
+                stage.join();
+            long wall = System.nanoTime() - start;
+            StringBuilder report = new StringBuilder(Stage.header()).append('\n');
+            for (Stage stage: stages)
+                report.append(stage.report(wall)).append('\n');
+            report.append(String.format(Locale.ROOT, "%d maps in %.1f s", files.size(), wall / 1e9));
+            return report.toString();
+        } finally {
+            solvePool.shutdown();
+        }
+    }
+
+    public static void main(String[] args)
+    throws IOException, InterruptedException
+    {
+        System.setProperty("java.awt.headless", "true");
+        BatchPipeline pipeline = new BatchPipeline();
+        pipeline.parseArguments(args);
+        System.out.println(pipeline.run());
+        System.exit(0);
+    }
+}
@@ -0,0 +1,134 @@
+package amazed.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// a stage of the pipeline: `workers' threads take jobs from the input
+// queue, apply the stage's work to them, and put them in the output
+// queue, if any; both queues are bounded, so a slow stage holds back
+// the ones before it. The end of the jobs is marked by BatchJob.END,
+// which every worker passes on to the next worker of its stage, and
+// the last worker to finish puts in the output queue.
+class Stage
+{
+    // the work done on a job by a stage; a job that failed in an
+    // earlier stage is passed on without work, except to the last
+    // stage, which has no output queue and reports all jobs
+    interface Work
+    {
+        void apply(BatchJob job) throws Exception;
+    }
+
+    private final String name;
+    private final int workers;
+    private final Work work;
+    private final BlockingQueue<BatchJob> input;
+    private final BlockingQueue<BatchJob> output;
+    private final AtomicInteger running = new AtomicInteger();
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    // queue depth seen by each take, to report its mean and maximum
+    private final LongAdder depthSum = new LongAdder();
+    private final LongAdder depthSamples = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    Stage(String name, int workers, Work work, BlockingQueue<BatchJob> input, BlockingQueue<BatchJob> output)
+    {
+        this.name = name;
+        this.workers = workers;
+        this.work = work;
+        this.input = input;
+        this.output = output;
+    }
+
+    void start()
+    {
+        running.set(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::run, "batch-" + name + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    void join()
+    throws InterruptedException
+    {
+        for (Thread thread: threads)
+            thread.join();
+    }
+
+    private void run()
+    {
+        try {
+            while (true) {
+                int depth = input.size();
+                depthSum.add(depth);
+                depthSamples.increment();
+                maxDepth.accumulateAndGet(depth, Math::max);
+                BatchJob job = input.take();
+                if (job == BatchJob.END) {
+                    input.put(job);
+                    break;
+                }
+                if (job.error == null || output == null) {
+                    long start = System.nanoTime();
+                    try {
+                        work.apply(job);
+                    } catch (Throwable e) {
+                        // errors too, such as running out of memory on
+                        // one large map, fail only their job
+                        job.fail(name, e);
+                        failed.increment();
+                    }
+                    busyNanos.add(System.nanoTime() - start);
+                }
+                processed.increment();
+                if (output != null)
+                    output.put(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // however its workers stop, the stage ends the next one
+            if (running.decrementAndGet() == 0 && output != null)
+                end();
+        }
+    }
+
+    private void end()
+    {
+        try {
+            output.put(BatchJob.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String header()
+    {
+        return "stage,workers,jobs,failed,jobs_per_s,busy_ms,utilization,mean_queue,max_queue";
+    }
+
+    // the statistics of the stage over a run of wallNanos, as a CSV line
+    String report(long wallNanos)
+    {
+        long jobs = processed.sum();
+        long busy = busyNanos.sum();
+        long samples = depthSamples.sum();
+        return String.join(",", name, Integer.toString(workers), Long.toString(jobs), Long.toString(failed.sum()),
+                           String.format(Locale.ROOT, "%.1f", jobs / (wallNanos / 1e9)),
+                           String.format(Locale.ROOT, "%.1f", busy / 1e6),
+                           String.format(Locale.ROOT, "%.2f", (double) busy / wallNanos / workers),
+                           String.format(Locale.ROOT, "%.2f", samples == 0 ? 0.0 : (double) depthSum.sum() / samples),
+                           Integer.toString(maxDepth.get()));
+    }
+}
@@ -0,0 +1,284 @@
+package amazed.bench;
+
+import amazed.maze.Maze;
+import amazed.solver.SequentialSolver;
+import amazed.solver.Solvers;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>Benchmark</code> is a headless command that times solvers on
+ * mazes, for tracking performance across releases.
+ * <p>
+ * For every combination of map, solver and (for parallel and cluster
+ * solvers) <code>forkAfter</code> value, the command runs the solver
+ * a number of times to warm up the JIT compiler, then a number of
+ * measured times, with animation disabled. It reports the minimum,
+ * median and 99th percentile of the solve time, and the median
+ * number of expanded nodes and path length, as CSV or JSON.
+ * <p>
+ * Run without arguments to print the options.
+ */
+
+public class Benchmark
+{
+    private static final String FORMAT_CSV = "csv";
+    private static final String FORMAT_JSON = "json";
+
+    private List<String> maps = Arrays.asList("small", "medium");
+    private List<String> solvers = Arrays.asList(Solvers.SEQUENTIAL, Solvers.PARALLEL);
+    private List<Integer> forkAfters = Arrays.asList(1, 3, 9);
+    private int warmup = 5;
+    private int repeat = 20;
+    private String format = FORMAT_CSV;
+    private String output;
+
+    // measurements of one combination of map, solver and forkAfter
+    static class Result
+    {
+        final String map;
+        final String solver;
+        final int forkAfter;
+        // per measured run: solve time, expanded nodes (-1 if unknown), path length (0 if none)
+        final long[] nanos;
+        final long[] expanded;
+        final long[] lengths;
+        int found;
+
+        Result(String map, String solver, int forkAfter, int runs)
+        {
+            this.map = map;
+            this.solver = solver;
+            this.forkAfter = forkAfter;
+            this.nanos = new long[runs];
+            this.expanded = new long[runs];
+            this.lengths = new long[runs];
+        }
+
+        boolean hasExpanded()
+        {
+            return expanded.length > 0 && expanded[0] >= 0;
+        }
+    }
+
+    private static void printUsageAndExit()
+    {
+        System.out.println("Benchmark: times solvers on mazes, without display.\n"
+                           + "\n"
+                           + "usage: java " + Benchmark.class.getName() + " [OPTION VALUE]...\n"
+                           + "\n"
+                           + " --maps M,...        map files, 'small', 'medium' or 'generated-N'\n"
+                           + "                     (default: small,medium)\n"
+                           + " --solvers S,...     solver names (default: sequential,parallel)\n"
+                           + " --fork-after N,...  forkAfter values of parallel solvers, workers\n"
+                           + "                     of cluster solvers (default: 1,3,9)\n"
+                           + " --warmup N          unmeasured runs per combination (default: 5)\n"
+                           + " --repeat N          measured runs per combination (default: 20)\n"
+                           + " --format F          'csv' or 'json' (default: csv)\n"
+                           + " --output FILE       file to write results to (default: standard output)");
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args)
+    {
+        if (args.length == 0 || args.length % 2 != 0)
+            printUsageAndExit();
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--maps":
+                    maps = Arrays.asList(value.split(","));
+                    break;
+                case "--solvers":
+                    solvers = Arrays.asList(value.split(","));
+                    for (String solver: solvers) {
+                        if (!Solvers.names().contains(solver))
+                            printUsageAndExit();
+                    }
+                    break;
+                case "--fork-after":
+                    forkAfters = new ArrayList<>();
+                    for (String n: value.split(","))
+                        forkAfters.add(Integer.parseInt(n));
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value);
+                    break;
+                case "--format":
+                    if (!value.equals(FORMAT_CSV) && !value.equals(FORMAT_JSON))
+                        printUsageAndExit();
+                    format = value;
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    printUsageAndExit();
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (warmup < 0 || repeat < 1)
+            printUsageAndExit();
+    }
+
+    /**
+     * Runs all combinations of maps, solvers and
+     * <code>forkAfter</code> values.
+     *
+     * @return   the measurements, one per combination
+     * @throws IOException if a generated map cannot be written
+     */
+    List<Result> run()
+    throws IOException
+    {
+        List<Result> results = new ArrayList<>();
+        for (String map: maps) {
+            Maze maze = BenchmarkMaps.load(map);
+            for (String solver: solvers) {
+                boolean forks = solver.equals(Solvers.PARALLEL) || solver.equals(Solvers.CLUSTER);
+                for (int forkAfter: forks ? forkAfters : Arrays.asList(0)) {
+                    System.err.println("Running " + solver + (forks ? "-" + forkAfter : "") + " on " + map);
+                    results.add(measure(maze, map, solver, forkAfter));
+                }
+            }
+        }
+        return results;
+    }
+
+    private Result measure(Maze maze, String map, String solver, int forkAfter)
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (int i = 0; i < warmup; i++)
+            pool.invoke(Solvers.create(solver, maze, forkAfter));
+        Result result = new Result(map, solver, forkAfter, repeat);
+        for (int i = 0; i < repeat; i++) {
+            RecursiveTask<List<Integer>> task = Solvers.create(solver, maze, forkAfter);
+            long start = System.nanoTime();
+            List<Integer> path = pool.invoke(task);
+            result.nanos[i] = System.nanoTime() - start;
+            result.expanded[i] = expandedNodes(task);
+            result.lengths[i] = path == null ? 0 : path.size();
+            if (path != null)
+                result.found += 1;
+        }
+        return result;
+    }
+
+    // nodes expanded by a finished solver, as counted in its metrics:
+    // 0 for hpa and cluster, whose search doesn't run over the maze's
+    // nodes in this JVM; -1 if the solver has no metrics
+    private static long expandedNodes(RecursiveTask<List<Integer>> task)
+    {
+        if (task instanceof SequentialSolver)
+            return ((SequentialSolver) task).getMetrics().getExpandedNodes();
+        return -1;
+    }
+
+    /**
+     * Returns the value at a percentile of some values, by the
+     * nearest-rank method.
+     *
+     * @param values       the values, in any order; not modified
+     * @param percentile   the percentile, between 0 and 100
+     * @return             the smallest value that is at least as large
+     *                     as <code>percentile</code> percent of the values
+     */
+    static long percentile(long[] values, double percentile)
+    {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    static void writeCsv(List<Result> results, PrintWriter out)
+    {
+        out.println("map,solver,fork_after,runs,found,min_ms,median_ms,p99_ms,expanded_nodes,path_length");
+        for (Result r: results) {
+            out.println(String.join(",", r.map, r.solver, Integer.toString(r.forkAfter),
+                                    Integer.toString(r.nanos.length), Integer.toString(r.found),
+                                    millis(percentile(r.nanos, 0)),
+                                    millis(percentile(r.nanos, 50)),
+                                    millis(percentile(r.nanos, 99)),
+                                    r.hasExpanded() ? Long.toString(percentile(r.expanded, 50)) : "",
+                                    Long.toString(percentile(r.lengths, 50))));
+        }
+    }
+
+    static void writeJson(List<Result> results, PrintWriter out)
+    {
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.print("  {\"map\": " + quote(r.map)
+                      + ", \"solver\": " + quote(r.solver)
+                      + ", \"forkAfter\": " + r.forkAfter
+                      + ", \"runs\": " + r.nanos.length
+                      + ", \"found\": " + r.found
+                      + ", \"minMs\": " + millis(percentile(r.nanos, 0))
+                      + ", \"medianMs\": " + millis(percentile(r.nanos, 50))
+                      + ", \"p99Ms\": " + millis(percentile(r.nanos, 99))
+                      + ", \"expandedNodes\": " + (r.hasExpanded() ? percentile(r.expanded, 50) : "null")
+                      + ", \"pathLength\": " + percentile(r.lengths, 50) + "}");
+            out.println(i + 1 < results.size() ? "," : "");
+        }
+        out.println("]");
+    }
+
+    private static String quote(String text)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char ch: text.toCharArray()) {
+            if (ch == '"' || ch == '\\')
+                quoted.append('\\').append(ch);
+            else if (ch < 0x20)
+                quoted.append(String.format("\\u%04x", (int) ch));
+            else
+                quoted.append(ch);
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void write(List<Result> results)
+    throws IOException
+    {
+        Writer writer = output == null ? new java.io.OutputStreamWriter(System.out) : new FileWriter(output);
+        PrintWriter out = new PrintWriter(writer);
+        if (format.equals(FORMAT_JSON))
+            writeJson(results, out);
+        else
+            writeCsv(results, out);
+        out.flush();
+        if (output != null)
+            out.close();
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        Benchmark benchmark = new Benchmark();
+        benchmark.parseArguments(args);
+        benchmark.write(benchmark.run());
+    }
+}
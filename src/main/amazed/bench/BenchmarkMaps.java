@@ -0,0 +1,68 @@
+package amazed.bench;
+
+import amazed.maze.Maze;
+import amazed.maze.MazeGenerator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <code>BenchmarkMaps</code> resolves the names of the maps that
+ * benchmarks run on. A name is either the name of a map file, or
+ * <code>generated-N</code> for an N x N maze made by
+ * {@link MazeGenerator} with a fixed seed, which is written to a
+ * temporary file deleted when the JVM exits. The names
+ * <code>small</code> and <code>medium</code> stand for the maps
+ * shipped in directory <code>maps</code>.
+ */
+
+public final class BenchmarkMaps
+{
+    /**
+     * The prefix of the names of generated maps.
+     */
+    public static final String GENERATED = "generated-";
+
+    private static final String MAPS_DIR = "maps";
+    private static final long SEED = 42;
+    private static final double BRAID = 0.1;
+
+    private BenchmarkMaps()
+    {
+    }
+
+    /**
+     * Returns the name of the file of a map, generating the map if
+     * needed.
+     *
+     * @param name   the name of a map
+     * @return       the name of the map file
+     * @throws IOException if a generated map cannot be written
+     */
+    public static String file(String name)
+    throws IOException
+    {
+        if (name.equals("small") || name.equals("medium"))
+            return MAPS_DIR + File.separator + name + ".map";
+        if (!name.startsWith(GENERATED))
+            return name;
+        int size = Integer.parseInt(name.substring(GENERATED.length()));
+        File file = File.createTempFile("maze" + size + "-", ".map");
+        file.deleteOnExit();
+        new MazeGenerator(SEED).write(file, size, size, BRAID);
+        return file.getPath();
+    }
+
+    /**
+     * Loads the maze of a map, without animation.
+     *
+     * @param name   the name of a map
+     * @return       the maze of the map
+     * @throws IOException if a generated map cannot be written
+     */
+    public static Maze load(String name)
+    throws IOException
+    {
+        return Maze.load(file(name));
+    }
+}
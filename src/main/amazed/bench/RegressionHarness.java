@@ -0,0 +1,372 @@
+package amazed.bench;
+
+import amazed.maze.Maze;
+import amazed.maze.MazeGenerator;
+import amazed.solver.Solvers;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <code>RegressionHarness</code> checks that solvers stay correct
+ * and don't get slower, so that a regression fails the build.
+ * <p>
+ * The harness generates random mazes from a range of seeds, with
+ * {@link MazeGenerator}; in every other maze, the goal is walled in,
+ * so that it cannot be reached. It runs every solver on every maze,
+ * and checks that:
+ * <ul>
+ * <li>every path returned is valid, according to
+ *     {@link Maze#isValidPath};</li>
+ * <li>all solvers agree on whether the goal is reachable;</li>
+ * <li>no solve takes longer than a timeout.</li>
+ * </ul>
+ * It then compares the median time of each solver on each size of
+ * maze, summed over the mazes, with the time stored in a baseline
+ * file: a time is a regression if it exceeds the baseline by more
+ * than a relative tolerance plus an absolute slack, which absorbs the
+ * noise of very short solves. If the baseline file doesn't exist, the
+ * harness stores the times measured as the new baseline.
+ * <p>
+ * The command exits with status 1 if a check failed, 0 otherwise.
+ * Run without arguments to print the options.
+ */
+
+public class RegressionHarness
+{
+    private static final char WALL = '*';
+    private static final char GOAL = 'v';
+    private static final double BRAID = 0.1;
+
+    private List<Integer> sizes = Arrays.asList(31, 63, 127);
+    private List<String> solvers = Arrays.asList(Solvers.SEQUENTIAL, Solvers.PARALLEL, Solvers.JUMP_POINT,
+                                                 Solvers.BIT_PARALLEL, Solvers.HIERARCHICAL);
+    private List<Integer> forkAfters = Arrays.asList(1, 3, 9);
+    private int seeds = 10;
+    private int warmup = 2;
+    private int repeat = 5;
+    private double tolerance = 0.5;
+    private double slackMillis = 5;
+    private long timeoutSeconds = 60;
+    private String baseline = "regression-baseline.properties";
+    private boolean update;
+
+    private final List<String> failures = new ArrayList<>();
+
+    private static void printUsageAndExit()
+    {
+        System.out.println("RegressionHarness: checks solvers' paths and times on random mazes.\n"
+                           + "\n"
+                           + "usage: java " + RegressionHarness.class.getName() + " [OPTION VALUE]...\n"
+                           + "\n"
+                           + " --sizes N,...       sides of the generated mazes (default: 31,63,127)\n"
+                           + " --seeds N           mazes generated per size (default: 10)\n"
+                           + " --solvers S,...     solver names (default: all but cluster)\n"
+                           + " --fork-after N,...  forkAfter values of parallel solvers (default: 1,3,9)\n"
+                           + " --warmup N          unmeasured runs per maze (default: 2)\n"
+                           + " --repeat N          measured runs per maze (default: 5)\n"
+                           + " --tolerance P       allowed slowdown over the baseline, in percent (default: 50)\n"
+                           + " --slack MS          allowed slowdown in milliseconds, added to the tolerance (default: 5)\n"
+                           + " --timeout S         longest solve allowed, in seconds (default: 60)\n"
+                           + " --baseline FILE     baseline times (default: regression-baseline.properties)\n"
+                           + " --update true       store the times measured as the new baseline");
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args)
+    {
+        if (args.length % 2 != 0)
+            printUsageAndExit();
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--sizes":
+                    sizes = integers(value);
+                    break;
+                case "--seeds":
+                    seeds = Integer.parseInt(value);
+                    break;
+                case "--solvers":
+                    solvers = Arrays.asList(value.split(","));
+                    for (String solver: solvers) {
+                        if (!Solvers.names().contains(solver))
+                            printUsageAndExit();
+                    }
+                    break;
+                case "--fork-after":
+                    forkAfters = integers(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(value) / 100;
+                    break;
+                case "--slack":
+                    slackMillis = Double.parseDouble(value);
+                    break;
+                case "--timeout":
+                    timeoutSeconds = Long.parseLong(value);
+                    break;
+                case "--baseline":
+                    baseline = value;
+                    break;
+                case "--update":
+                    update = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    printUsageAndExit();
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (seeds < 1 || warmup < 0 || repeat < 1 || tolerance < 0 || slackMillis < 0 || timeoutSeconds < 1)
+            printUsageAndExit();
+    }
+
+    private static List<Integer> integers(String list)
+    {
+        List<Integer> values = new ArrayList<>();
+        for (String n: list.split(","))
+            values.add(Integer.parseInt(n));
+        return values;
+    }
+
+    /**
+     * Generates the map of a random maze. The goal of mazes with an
+     * odd seed is walled in.
+     *
+     * @param seed   the seed of the maze
+     * @param size   the number of rows and columns of the maze, at least 3
+     * @return       the text of the map
+     */
+    static String generate(long seed, int size)
+    {
+        String map = new MazeGenerator(seed).generate(size, size, BRAID);
+        if (seed % 2 == 0)
+            return map;
+        // rows of the map are " c c c...", after a header line
+        String[] lines = map.split("\n");
+        char[][] grid = new char[lines.length][];
+        for (int i = 0; i < lines.length; i++)
+            grid[i] = lines[i].toCharArray();
+        for (int row = 1; row < grid.length; row++) {
+            for (int col = 1; col < grid[row].length; col += 2) {
+                if (grid[row][col] != GOAL)
+                    continue;
+                if (row > 1)
+                    grid[row - 1][col] = WALL;
+                if (row + 1 < grid.length)
+                    grid[row + 1][col] = WALL;
+                if (col > 1)
+                    grid[row][col - 2] = WALL;
+                if (col + 2 < grid[row].length)
+                    grid[row][col + 2] = WALL;
+            }
+        }
+        StringBuilder blocked = new StringBuilder(map.length());
+        for (char[] line: grid)
+            blocked.append(line).append('\n');
+        return blocked.toString();
+    }
+
+    private static Maze load(String map)
+    throws IOException
+    {
+        File file = File.createTempFile("regression-", ".map");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(map);
+        }
+        return Maze.load(file.getPath());
+    }
+
+    // names of the solver configurations that are run, as "parallel-3"
+    private List<String> configurations()
+    {
+        List<String> configurations = new ArrayList<>();
+        for (String solver: solvers) {
+            if (solver.equals(Solvers.PARALLEL) || solver.equals(Solvers.CLUSTER)) {
+                for (int forkAfter: forkAfters)
+                    configurations.add(solver + "-" + forkAfter);
+            } else {
+                configurations.add(solver);
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Runs all solvers on all generated mazes, checking their paths
+     * and agreement.
+     *
+     * @return   the sum over the mazes of each size of the median
+     *           solve time of each solver configuration, in
+     *           milliseconds, by keys "configuration.size"
+     * @throws IOException if a generated map cannot be written
+     */
+    Map<String, Double> run()
+    throws IOException
+    {
+        Map<String, Double> times = new LinkedHashMap<>();
+        for (int size: sizes) {
+            for (long seed = 0; seed < seeds; seed++) {
+                Maze maze = load(generate(seed, size));
+                String mazeName = "size " + size + " seed " + seed;
+                System.err.println("Solving " + mazeName);
+                Boolean reachable = null;
+                String reference = null;
+                for (String configuration: configurations()) {
+                    long[] nanos = new long[repeat];
+                    for (int i = -warmup; i < repeat; i++) {
+                        long start = System.nanoTime();
+                        List<Integer> path;
+                        try {
+                            path = solve(configuration, maze);
+                        } catch (SolveFailed e) {
+                            fail(e.getMessage() + " on " + mazeName);
+                            break;
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        if (i >= 0)
+                            nanos[i] = elapsed;
+                        boolean found = path != null;
+                        if (found && !maze.isValidPath(path)) {
+                            fail(configuration + " returned an invalid path on " + mazeName);
+                        } else if (reachable == null) {
+                            reachable = found;
+                            reference = configuration;
+                        } else if (reachable != found) {
+                            fail(configuration + (found ? " found" : " didn't find") + " the goal on " + mazeName
+                                 + ", " + reference + (reachable ? " did" : " didn't"));
+                        }
+                    }
+                    String key = configuration + "." + size;
+                    times.merge(key, Benchmark.percentile(nanos, 50) / 1e6, Double::sum);
+                }
+            }
+        }
+        return times;
+    }
+
+    // a solve that didn't return
+    private static class SolveFailed extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        SolveFailed(String message)
+        {
+            super(message);
+        }
+    }
+
+    private List<Integer> solve(String configuration, Maze maze)
+    throws SolveFailed
+    {
+        int dash = configuration.indexOf('-');
+        String solver = dash < 0 ? configuration : configuration.substring(0, dash);
+        int forkAfter = dash < 0 ? 0 : Integer.parseInt(configuration.substring(dash + 1));
+        ForkJoinTask<List<Integer>> task = ForkJoinPool.commonPool().submit(Solvers.create(solver, maze, forkAfter));
+        try {
+            return task.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new SolveFailed(configuration + " timed out");
+        } catch (ExecutionException e) {
+            throw new SolveFailed(configuration + " threw " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolveFailed(configuration + " was interrupted");
+        }
+    }
+
+    private void fail(String failure)
+    {
+        System.err.println("FAIL " + failure);
+        failures.add(failure);
+    }
+
+    /**
+     * Compares times with the baseline, or stores them as the
+     * baseline if there is none or if updating was requested.
+     *
+     * @param times   times returned by <code>run</code>
+     * @throws IOException if the baseline cannot be read or written
+     */
+    void compare(Map<String, Double> times)
+    throws IOException
+    {
+        File file = new File(baseline);
+        if (update || !file.exists()) {
+            Properties stored = new Properties();
+            for (Map.Entry<String, Double> time: times.entrySet())
+                stored.setProperty(time.getKey(), format(time.getValue()));
+            try (Writer writer = new FileWriter(file)) {
+                stored.store(writer, "median solve times in milliseconds, summed over " + seeds + " mazes");
+            }
+            System.out.println("Stored baseline " + baseline);
+            return;
+        }
+        Properties stored = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            stored.load(reader);
+        }
+        System.out.println("solver.size,baseline_ms,current_ms,change");
+        for (Map.Entry<String, Double> time: times.entrySet()) {
+            String value = stored.getProperty(time.getKey());
+            if (value == null) {
+                System.out.println(time.getKey() + ",," + format(time.getValue()) + ",");
+                continue;
+            }
+            double before = Double.parseDouble(value);
+            double now = time.getValue();
+            System.out.println(time.getKey() + "," + value + "," + format(now) + ","
+                               + String.format(Locale.ROOT, "%+.0f%%", 100 * (now - before) / before));
+            if (now > before * (1 + tolerance) + slackMillis)
+                fail(time.getKey() + " took " + format(now) + " ms, baseline " + value + " ms");
+        }
+    }
+
+    private static String format(double millis)
+    {
+        return String.format(Locale.ROOT, "%.3f", millis);
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        RegressionHarness harness = new RegressionHarness();
+        harness.parseArguments(args);
+        harness.compare(harness.run());
+        if (!harness.failures.isEmpty()) {
+            System.out.println(harness.failures.size() + " check(s) failed:");
+            for (String failure: harness.failures)
+                System.out.println("  " + failure);
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,294 @@
+package amazed.bench;
+
+import amazed.maze.Maze;
+import amazed.solver.Solvers;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>ScalabilitySweep</code> measures how a solver scales with
+ * the number of threads, to choose its configuration on a host.
+ * <p>
+ * For every map, the sweep runs the solver at every parallelism from
+ * 1 to a maximum, and with every <code>forkAfter</code> value of a
+ * grid, each combination in a fresh, dedicated
+ * <code>ForkJoinPool</code>. For each combination it reports the
+ * median solve time, the speedup and parallel efficiency relative to
+ * parallelism 1 with the same <code>forkAfter</code>, the median
+ * number of tasks stolen between workers
+ * (<code>ForkJoinPool.getStealCount</code>), and the median idle
+ * time of the workers: the time they were available during the solve
+ * minus the CPU time they used. It then recommends, for every map,
+ * the fastest combination.
+ * <p>
+ * Between runs, the sweep waits for the pool to be quiescent, so that
+ * tasks still running after a solve has returned don't slow down the
+ * next one. Idle workers of the pool are kept alive for the whole
+ * measurement of a combination, so that no CPU time is lost with a
+ * terminated worker. Run without arguments to print the options.
+ */
+
+public class ScalabilitySweep
+{
+    private static final long QUIESCENCE_SECONDS = 60;
+    // longer than the measurement of any combination
+    private static final long WORKER_KEEP_ALIVE_MINUTES = 60;
+    // the default largest number of workers of a ForkJoinPool
+    private static final int MAX_WORKERS = 0x7fff;
+
+    private List<String> maps = Arrays.asList("medium", BenchmarkMaps.GENERATED + "255");
+    private String solver = Solvers.PARALLEL;
+    private int maxParallelism = Runtime.getRuntime().availableProcessors();
+    private List<Integer> forkAfters = Arrays.asList(1, 3, 9, 27);
+    private int warmup = 3;
+    private int repeat = 10;
+
+    // measurements of one combination of map, parallelism and forkAfter
+    static class Point
+    {
+        final String map;
+        final int parallelism;
+        final int forkAfter;
+        final long medianNanos;
+        final long medianSteals;
+        final long medianIdleNanos;
+        double speedup;
+
+        Point(String map, int parallelism, int forkAfter, long medianNanos, long medianSteals, long medianIdleNanos)
+        {
+            this.map = map;
+            this.parallelism = parallelism;
+            this.forkAfter = forkAfter;
+            this.medianNanos = medianNanos;
+            this.medianSteals = medianSteals;
+            this.medianIdleNanos = medianIdleNanos;
+        }
+
+        double efficiency()
+        {
+            return speedup / parallelism;
+        }
+    }
+
+    // pool whose workers can be enumerated, to add up their CPU time
+    private static class Workers
+        implements ForkJoinPool.ForkJoinWorkerThreadFactory
+    {
+        private final Queue<Thread> threads = new ConcurrentLinkedQueue<>();
+        // thread id --> CPU time last read, kept once the thread has
+        // terminated and no longer reports it
+        private final Map<Long, Long> lastCpu = new ConcurrentHashMap<>();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            threads.add(thread);
+            return thread;
+        }
+
+        // CPU time used so far by all workers, or -1 if the JVM doesn't measure it
+        long cpuNanos()
+        {
+            ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+            if (!mx.isThreadCpuTimeSupported() || !mx.isThreadCpuTimeEnabled())
+                return -1;
+            for (Thread thread: threads) {
+                long cpu = mx.getThreadCpuTime(thread.getId());
+                if (cpu >= 0)
+                    lastCpu.put(thread.getId(), cpu);
+            }
+            long sum = 0;
+            for (long cpu: lastCpu.values())
+                sum += cpu;
+            return sum;
+        }
+    }
+
+    private static void printUsageAndExit()
+    {
+        System.out.println("ScalabilitySweep: measures how a solver scales with its threads.\n"
+                           + "\n"
+                           + "usage: java " + ScalabilitySweep.class.getName() + " [OPTION VALUE]...\n"
+                           + "\n"
+                           + " --maps M,...        map files, 'small', 'medium' or 'generated-N'\n"
+                           + "                     (default: medium,generated-255)\n"
+                           + " --solver S          solver name (default: parallel)\n"
+                           + " --parallelism N     largest number of threads (default: available processors)\n"
+                           + " --fork-after N,...  forkAfter values (default: 1,3,9,27)\n"
+                           + " --warmup N          unmeasured runs per combination (default: 3)\n"
+                           + " --repeat N          measured runs per combination (default: 10)");
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args)
+    {
+        if (args.length % 2 != 0)
+            printUsageAndExit();
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--maps":
+                    maps = Arrays.asList(value.split(","));
+                    break;
+                case "--solver":
+                    if (!Solvers.names().contains(value))
+                        printUsageAndExit();
+                    solver = value;
+                    break;
+                case "--parallelism":
+                    maxParallelism = Integer.parseInt(value);
+                    break;
+                case "--fork-after":
+                    forkAfters = new ArrayList<>();
+                    for (String n: value.split(","))
+                        forkAfters.add(Integer.parseInt(n));
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value);
+                    break;
+                default:
+                    printUsageAndExit();
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (maxParallelism < 1 || warmup < 0 || repeat < 1)
+            printUsageAndExit();
+    }
+
+    /**
+     * Runs the sweep over all maps.
+     *
+     * @return   the measurements, by map, <code>forkAfter</code> and
+     *           parallelism
+     * @throws IOException if a generated map cannot be written
+     */
+    List<Point> run()
+    throws IOException
+    {
+        List<Point> points = new ArrayList<>();
+        for (String map: maps) {
+            Maze maze = BenchmarkMaps.load(map);
+            for (int forkAfter: forkAfters) {
+                Point serial = null;
+                for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+                    System.err.println("Running " + solver + "-" + forkAfter + " on " + map
+                                       + " with " + parallelism + " thread(s)");
+                    Point point = measure(maze, map, parallelism, forkAfter);
+                    if (serial == null)
+                        serial = point;
+                    point.speedup = (double) serial.medianNanos / point.medianNanos;
+                    points.add(point);
+                }
+            }
+        }
+        return points;
+    }
+
+    private Point measure(Maze maze, String map, int parallelism, int forkAfter)
+    {
+        Workers workers = new Workers();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, workers, null, false, parallelism, MAX_WORKERS, 1, null,
+                                             WORKER_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        try {
+            long[] nanos = new long[repeat];
+            long[] steals = new long[repeat];
+            long[] idle = new long[repeat];
+            for (int i = -warmup; i < repeat; i++) {
+                long stealsBefore = pool.getStealCount();
+                long cpuBefore = workers.cpuNanos();
+                long start = System.nanoTime();
+                pool.invoke(Solvers.create(solver, maze, forkAfter));
+                long elapsed = System.nanoTime() - start;
+                long cpu = workers.cpuNanos() - cpuBefore;
+                long stolen = pool.getStealCount() - stealsBefore;
+                pool.awaitQuiescence(QUIESCENCE_SECONDS, TimeUnit.SECONDS);
+                if (i < 0)
+                    continue;
+                nanos[i] = elapsed;
+                steals[i] = stolen;
+                idle[i] = cpuBefore < 0 ? -1 : Math.max(0, parallelism * elapsed - cpu);
+            }
+            return new Point(map, parallelism, forkAfter, Benchmark.percentile(nanos, 50),
+                             Benchmark.percentile(steals, 50), Benchmark.percentile(idle, 50));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the fastest combination for each map.
+     *
+     * @param points   measurements returned by <code>run</code>
+     * @return         the point with the smallest median time of each map
+     */
+    static List<Point> recommend(List<Point> points)
+    {
+        List<Point> best = new ArrayList<>();
+        for (Point point: points) {
+            Point current = best.isEmpty() ? null : best.get(best.size() - 1);
+            if (current == null || !current.map.equals(point.map))
+                best.add(point);
+            else if (point.medianNanos < current.medianNanos)
+                best.set(best.size() - 1, point);
+        }
+        return best;
+    }
+
+    private static String millis(long nanos)
+    {
+        return nanos < 0 ? "" : String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String ratio(double value)
+    {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    void report(List<Point> points)
+    {
+        System.out.println("map,solver,parallelism,fork_after,runs,median_ms,speedup,efficiency,steals,idle_ms");
+        for (Point p: points) {
+            System.out.println(String.join(",", p.map, solver, Integer.toString(p.parallelism),
+                                           Integer.toString(p.forkAfter), Integer.toString(repeat),
+                                           millis(p.medianNanos), ratio(p.speedup), ratio(p.efficiency()),
+                                           Long.toString(p.medianSteals), millis(p.medianIdleNanos)));
+        }
+        System.out.println();
+        System.out.println("map,best_parallelism,best_fork_after,median_ms,speedup,efficiency");
+        for (Point p: recommend(points)) {
+            System.out.println(String.join(",", p.map, Integer.toString(p.parallelism),
+                                           Integer.toString(p.forkAfter), millis(p.medianNanos),
+                                           ratio(p.speedup), ratio(p.efficiency())));
+        }
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        ScalabilitySweep sweep = new ScalabilitySweep();
+        sweep.parseArguments(args);
+        sweep.report(sweep.run());
+        System.exit(0);
+    }
+}
@@ -0,0 +1,291 @@
+package amazed.cluster;
+
+import amazed.maze.Maze;
+import amazed.solver.SolveCancellation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>ClusterCoordinator</code> solves a maze with several worker
+ * processes, each searching a band of rows of the maze.
+ * <p>
+ * The coordinator splits the rows of the maze in as many bands as
+ * workers, starts one {@link ClusterWorker} JVM per band on the local
+ * host, and sends every worker the accessible cells and goals of its
+ * band. Neighboring workers connect directly to each other and
+ * exchange the cells that cross their boundary in one batch per
+ * round.
+ * <p>
+ * Rounds are synchronized by the coordinator, which also detects
+ * termination: after every round each worker reports whether it found
+ * a goal and how many cells are left in its frontier, counting those
+ * just received from its neighbors. The search ends when a goal is
+ * found, or when all frontiers are empty. Since every batch sent in
+ * a round has been received before the reports, an empty frontier
+ * everywhere means that no cell is still in transit.
+ * <p>
+ * Finally, the path is stitched from the predecessor trees kept by
+ * the workers, by tracing it back from the goal band by band.
+ * <p>
+ * A solve can be cancelled while the workers connect or between two
+ * rounds; the coordinator then abandons it, and kills the workers.
+ */
+
+public class ClusterCoordinator
+{
+    // how long to wait for workers to connect
+    private static final int CONNECT_TIMEOUT_MS = 60_000;
+    // how often to check the cancellation while workers connect
+    private static final int CANCEL_POLL_MS = 100;
+
+    private final Maze maze;
+    private final int nWorkers;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private final List<DataInputStream> ins = new ArrayList<>();
+    private final List<DataOutputStream> outs = new ArrayList<>();
+
+    private int rounds;
+    private SolveCancellation cancellation;
+
+    /**
+     * Creates a coordinator that solves <code>maze</code> with
+     * <code>nWorkers</code> worker processes.
+     *
+     * @param maze       the maze to be searched
+     * @param nWorkers   the number of partitions and worker processes;
+     *                   capped at the number of rows of the maze
+     */
+    public ClusterCoordinator(Maze maze, int nWorkers)
+    {
+        this.maze = maze;
+        this.nWorkers = Math.max(1, Math.min(nWorkers, maze.rows()));
+    }
+
+    /**
+     * Returns the number of rounds of the last solve.
+     *
+     * @return   the number of search rounds run by the workers
+     */
+    public int getRounds()
+    {
+        return rounds;
+    }
+
+    // abandon solves, while workers connect or between two rounds,
+    // once cancellation is cancelled; solve then returns null
+    void setCancellation(SolveCancellation cancellation)
+    {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     * @throws IOException if a worker cannot be started or fails
+     */
+    public List<Integer> solve()
+    throws IOException
+    {
+        try (ServerSocket server = new ServerSocket(0, nWorkers, InetAddress.getLoopbackAddress())) {
+            startWorkers(server.getLocalPort());
+            int[] peerPorts = new int[nWorkers];
+            for (int i = 0; i < nWorkers; i++) {
+                Socket socket = accept(server);
+                if (socket == null)
+                    return null;
+                sockets.add(socket);
+                ins.add(Messages.in(socket));
+                outs.add(Messages.out(socket));
+                peerPorts[i] = ins.get(i).readInt();
+            }
+            for (int i = 0; i < nWorkers; i++)
+                setUp(i, peerPorts);
+            long goal = search();
+            return goal < 0 || cancelled() ? null : stitch(goal);
+        } finally {
+            stop();
+        }
+    }
+
+    private boolean cancelled()
+    {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    // the next worker to connect; null if the solve is cancelled first
+    private Socket accept(ServerSocket server)
+    throws IOException
+    {
+        server.setSoTimeout(CANCEL_POLL_MS);
+        long deadline = System.nanoTime() + CONNECT_TIMEOUT_MS * 1_000_000L;
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                if (cancelled())
+                    return null;
+                if (System.nanoTime() - deadline >= 0)
+                    throw e;
+            }
+        }
+    }
+
+    private void startWorkers(int port)
+    throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        for (int i = 0; i < nWorkers; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", classpath,
+                                                        ClusterWorker.class.getName(),
+                                                        Integer.toString(port));
+            builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processes.add(builder.start());
+        }
+    }
+
+    private int fromRow(int partition)
+    {
+        return (int) ((long) maze.rows() * partition / nWorkers);
+    }
+
+    private void setUp(int partition, int[] peerPorts)
+    throws IOException
+    {
+        int cols = maze.cols(), words = (cols + 63) >>> 6;
+        int fromRow = fromRow(partition), toRow = fromRow(partition + 1);
+        DataOutputStream out = outs.get(partition);
+        out.writeInt(cols);
+        out.writeInt(fromRow);
+        out.writeInt(toRow);
+        out.writeInt(partition > 0 ? peerPorts[partition - 1] : -1);
+        out.writeInt(partition + 1 < nWorkers ? peerPorts[partition + 1] : -1);
+        out.writeInt(maze.rowOf(maze.start()));
+        out.writeInt(maze.colOf(maze.start()));
+        for (int pass = 0; pass < 2; pass++) {
+            for (int row = fromRow; row < toRow; row++) {
+                for (int word = 0; word < words; word++) {
+                    long bits = 0;
+                    for (int col = word << 6; col < Math.min(cols, (word + 1) << 6); col++) {
+                        boolean set = pass == 0 ? maze.isAccessible(row, col) : maze.hasGoal(row, col);
+                        if (set)
+                            bits |= 1L << (col & 63);
+                    }
+                    out.writeLong(bits);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    // run rounds until a goal is found or all frontiers are empty
+    private long search()
+    throws IOException
+    {
+        rounds = 0;
+        while (true) {
+            if (cancelled())
+                return Messages.NO_CELL;
+            rounds += 1;
+            for (DataOutputStream out: outs) {
+                out.writeInt(Messages.ROUND);
+                out.flush();
+            }
+            long goal = Messages.NO_CELL;
+            long pending = 0;
+            for (DataInputStream in: ins) {
+                long found = in.readLong();
+                pending += in.readInt();
+                if (goal == Messages.NO_CELL)
+                    goal = found;
+            }
+            if (goal != Messages.NO_CELL)
+                return goal;
+            if (pending == 0)
+                return Messages.NO_CELL;
+        }
+    }
+
+    // trace the path back from goal, asking each band's owner in turn
+    private List<Integer> stitch(long goal)
+    throws IOException
+    {
+        int cols = maze.cols();
+        List<Integer> path = new ArrayList<>();
+        long cell = goal;
+        while (cell != Messages.NO_CELL) {
+            int partition = owner((int) (cell / cols));
+            DataOutputStream out = outs.get(partition);
+            out.writeInt(Messages.TRACE);
+            out.writeLong(cell);
+            out.flush();
+            DataInputStream in = ins.get(partition);
+            int length = in.readInt();
+            for (int i = 0; i < length; i++) {
+                long traced = in.readLong();
+                path.add(maze.cellId((int) (traced / cols), (int) (traced % cols)));
+            }
+            cell = in.readLong();
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private int owner(int row)
+    {
+        int partition = (int) ((long) row * nWorkers / maze.rows());
+        while (fromRow(partition + 1) <= row)
+            partition += 1;
+        while (fromRow(partition) > row)
+            partition -= 1;
+        return partition;
+    }
+
+    private void stop()
+    {
+        for (DataOutputStream out: outs) {
+            try {
+                out.writeInt(Messages.STOP);
+                out.flush();
+            } catch (IOException e) {
+                // worker already gone
+            }
+        }
+        for (Socket socket: sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to clean up
+            }
+        }
+        for (Process process: processes) {
+            // a cancelled solve doesn't wait for its workers to quit
+            if (cancelled())
+                process.destroyForcibly();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package amazed.cluster;
+
+import amazed.maze.Maze;
+import amazed.solver.SequentialSolver;
+import amazed.solver.SolveMetrics;
+import amazed.solver.Solvers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * <code>ClusterSolver</code> implements a solver for
+ * <code>Maze</code> objects that partitions the maze in bands of
+ * rows, searched by separate worker processes on the local host; see
+ * {@link ClusterCoordinator}.
+ * <p>
+ * The solver doesn't animate the search: it only moves a player to
+ * the goal once it is found. The coordinator checks the cancellation
+ * of the solve between two rounds of the workers, and kills them once
+ * it is cancelled.
+ */
+
+public class ClusterSolver extends SequentialSolver
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int nWorkers;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, using a given number of worker processes.
+     *
+     * @param maze       the maze to be searched
+     * @param nWorkers   the number of partitions and worker processes
+     */
+    public ClusterSolver(Maze maze, int nWorkers)
+    {
+        super(maze);
+        this.metrics = new SolveMetrics(Solvers.CLUSTER);
+        this.nWorkers = nWorkers;
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code> with
+     * worker processes.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     * @throws UncheckedIOException if the worker processes fail
+     */
+    @Override
+    protected List<Integer> search()
+    {
+        checkCancelled();
+        int player = maze.newPlayer(start);
+        try {
+            ClusterCoordinator coordinator = new ClusterCoordinator(maze, nWorkers);
+            coordinator.setCancellation(cancellation);
+            List<Integer> path = coordinator.solve();
+            checkCancelled();
+            if (path == null) {
+                // no goal reachable: the player is done
+                maze.removePlayer(player);
+                return null;
+            }
+            maze.move(player, path.get(path.size() - 1));
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package amazed.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <code>ClusterWorker</code> is the worker process of a
+ * partitioned solve started by {@link ClusterCoordinator}.
+ * <p>
+ * A worker owns a band of consecutive rows of the maze. In every
+ * round it searches its band breadth-first from its frontier, sends
+ * the cells of the search that fall into the neighboring bands, in
+ * one batch per neighbor, and continues the next round from the
+ * cells received from its neighbors. It keeps the predecessor of
+ * every cell it visited, so that the coordinator can stitch the final
+ * path across bands.
+ * <p>
+ * Usage: <code>java amazed.cluster.ClusterWorker PORT</code>, where
+ * <code>PORT</code> is the port of the coordinator on the local host.
+ */
+
+public class ClusterWorker
+{
+    private static final long UNVISITED = -2;
+    private static final long ROOT = -1;
+
+    private int cols;
+    private int fromRow;
+    private int toRow;
+    private int words;
+    private long[] passable;
+    private long[] goals;
+
+    // local cell --> global predecessor cell, ROOT, or UNVISITED
+    private long[] predecessor;
+    // local cells to be expanded, as a ring of capacity band size
+    private int[] frontier;
+    private int head, size;
+
+    // cells to be sent to the upper and lower neighbor: (cell, predecessor) pairs
+    private long[] toUpper = new long[64];
+    private int nToUpper;
+    private long[] toLower = new long[64];
+    private int nToLower;
+
+    private Peer upper;
+    private Peer lower;
+
+    public static void main(String[] args)
+    throws IOException, InterruptedException
+    {
+        if (args.length != 1) {
+            System.err.println("usage: java " + ClusterWorker.class.getName() + " PORT");
+            System.exit(1);
+        }
+        new ClusterWorker().run(Integer.parseInt(args[0]));
+    }
+
+    private void run(int coordinatorPort)
+    throws IOException, InterruptedException
+    {
+        InetAddress localhost = InetAddress.getLoopbackAddress();
+        try (ServerSocket peerServer = new ServerSocket(0, 1, localhost);
+             Socket coordinator = new Socket(localhost, coordinatorPort)) {
+            DataInputStream in = Messages.in(coordinator);
+            DataOutputStream out = Messages.out(coordinator);
+            out.writeInt(peerServer.getLocalPort());
+            out.flush();
+
+            cols = in.readInt();
+            fromRow = in.readInt();
+            toRow = in.readInt();
+            int upperPort = in.readInt();
+            int lowerPort = in.readInt();
+            int startRow = in.readInt();
+            int startCol = in.readInt();
+            words = (cols + 63) >>> 6;
+            passable = readWords(in, (toRow - fromRow) * words);
+            goals = readWords(in, (toRow - fromRow) * words);
+
+            // connect downwards, accept from upwards: no cycle of waits
+            if (lowerPort >= 0)
+                lower = new Peer(new Socket(localhost, lowerPort));
+            if (upperPort >= 0)
+                upper = new Peer(peerServer.accept());
+
+            int cells = (toRow - fromRow) * cols;
+            predecessor = new long[cells];
+            Arrays.fill(predecessor, UNVISITED);
+            frontier = new int[Math.max(1, cells)];
+            if (fromRow <= startRow && startRow < toRow)
+                visit((startRow - fromRow) * cols + startCol, ROOT);
+
+            serve(in, out);
+        } finally {
+            if (upper != null)
+                upper.close();
+            if (lower != null)
+                lower.close();
+        }
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out)
+    throws IOException, InterruptedException
+    {
+        while (true) {
+            int command = in.readInt();
+            switch (command) {
+            case Messages.ROUND:
+                long goal = search();
+                exchange();
+                out.writeLong(goal);
+                out.writeInt(size);
+                out.flush();
+                break;
+            case Messages.TRACE:
+                trace(in.readLong(), out);
+                out.flush();
+                break;
+            case Messages.STOP:
+                return;
+            default:
+                throw new IOException("Unknown command " + command);
+            }
+        }
+    }
+
+    // breadth-first search of the band from the frontier; returns the
+    // global cell of a goal found, or NO_CELL
+    private long search()
+    {
+        while (size > 0) {
+            int local = frontier[head];
+            head = (head + 1) % frontier.length;
+            size -= 1;
+            int row = fromRow + local / cols, col = local % cols;
+            long global = (long) row * cols + col;
+            if (isSet(goals, local))
+                return global;
+            step(row - 1, col, global);
+            step(row + 1, col, global);
+            step(row, col - 1, global);
+            step(row, col + 1, global);
+        }
+        return Messages.NO_CELL;
+    }
+
+    private void step(int row, int col, long from)
+    {
+        if (col < 0 || col >= cols)
+            return;
+        long global = (long) row * cols + col;
+        if (row == fromRow - 1 && upper != null) {
+            toUpper = append(toUpper, nToUpper, global, from);
+            nToUpper += 2;
+        } else if (row == toRow && lower != null) {
+            toLower = append(toLower, nToLower, global, from);
+            nToLower += 2;
+        } else if (fromRow <= row && row < toRow) {
+            int local = (row - fromRow) * cols + col;
+            if (isSet(passable, local) && predecessor[local] == UNVISITED)
+                visit(local, from);
+        }
+    }
+
+    private void visit(int local, long from)
+    {
+        predecessor[local] = from;
+        frontier[(head + size) % frontier.length] = local;
+        size += 1;
+    }
+
+    // send this round's batches, then receive the neighbors' ones
+    private void exchange()
+    throws IOException, InterruptedException
+    {
+        if (upper != null)
+            upper.send(toUpper, nToUpper);
+        if (lower != null)
+            lower.send(toLower, nToLower);
+        nToUpper = nToLower = 0;
+        if (upper != null)
+            receive(upper.batches.take());
+        if (lower != null)
+            receive(lower.batches.take());
+    }
+
+    private void receive(long[] batch)
+    {
+        for (int i = 0; i < batch.length; i += 2) {
+            int local = (int) (batch[i] - (long) fromRow * cols);
+            if (isSet(passable, local) && predecessor[local] == UNVISITED)
+                visit(local, batch[i + 1]);
+        }
+    }
+
+    // follow predecessors from cell while they stay in this band
+    private void trace(long cell, DataOutputStream out)
+    throws IOException
+    {
+        long[] path = new long[16];
+        int length = 0;
+        long current = cell;
+        long next = Messages.NO_CELL;
+        while (true) {
+            if (length == path.length)
+                path = Arrays.copyOf(path, 2 * length);
+            path[length++] = current;
+            long previous = predecessor[(int) (current - (long) fromRow * cols)];
+            if (previous == ROOT)
+                break;
+            int row = (int) (previous / cols);
+            if (row < fromRow || row >= toRow) {
+                next = previous;
+                break;
+            }
+            current = previous;
+        }
+        out.writeInt(length);
+        for (int i = 0; i < length; i++)
+            out.writeLong(path[i]);
+        out.writeLong(next);
+    }
+
+    private boolean isSet(long[] bits, int local)
+    {
+        int row = local / cols, col = local % cols;
+        return (bits[row * words + (col >>> 6)] & (1L << (col & 63))) != 0;
+    }
+
+    private static long[] append(long[] pairs, int n, long cell, long from)
+    {
+        if (n + 2 > pairs.length)
+            pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+        pairs[n] = cell;
+        pairs[n + 1] = from;
+        return pairs;
+    }
+
+    private static long[] readWords(DataInputStream in, int n)
+    throws IOException
+    {
+        long[] words = new long[n];
+        for (int i = 0; i < n; i++)
+            words[i] = in.readLong();
+        return words;
+    }
+
+    // connection to a neighboring worker; a reader thread drains the
+    // incoming batches, so that both sides can send at the same time
+    private static class Peer
+    {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<long[]> batches = new ArrayBlockingQueue<>(2);
+
+        Peer(Socket socket)
+        throws IOException
+        {
+            this.socket = socket;
+            this.out = Messages.out(socket);
+            DataInputStream in = Messages.in(socket);
+            Thread reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        long[] batch = new long[in.readInt()];
+                        for (int i = 0; i < batch.length; i++)
+                            batch[i] = in.readLong();
+                        batches.put(batch);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // connection closed at the end of the solve
+                }
+            }, "peer-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void send(long[] pairs, int n)
+        throws IOException
+        {
+            out.writeInt(n);
+            for (int i = 0; i < n; i++)
+                out.writeLong(pairs[i]);
+            out.flush();
+        }
+
+        void close()
+        throws IOException
+        {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package amazed.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+// wire protocol shared by coordinator and workers
+//
+// worker -> coordinator, once:   peer port
+// coordinator -> worker, once:   cols, fromRow, toRow, upper and lower
+//                                peer port
+//                                (or -1), start row and col, then the
+//                                passable and goal words of the band
+// coordinator -> worker:         ROUND | TRACE cell | STOP
+// worker -> coordinator:         after ROUND, goal cell (or -1) and
+//                                number of cells in the frontier;
+//                                after TRACE, number of cells, the cells,
+//                                and the cell where tracing continues
+//                                (or -1 at the start cell)
+// worker -> neighbor, per round: number of cells, then pairs of
+//                                (cell, predecessor cell)
+//
+// cells are global indexes row * cols + col
+final class Messages
+{
+    static final int ROUND = 1;
+    static final int TRACE = 2;
+    static final int STOP = 3;
+
+    static final int NO_CELL = -1;
+
+    private Messages()
+    {
+    }
+
+    static DataInputStream in(Socket socket)
+    throws IOException
+    {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+    }
+
+    static DataOutputStream out(Socket socket)
+    throws IOException
+    {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+}
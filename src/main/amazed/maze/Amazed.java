@@ -1,20 +1,26 @@
 package amazed.maze;
 
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
 
-import amazed.solver.SequentialSolver;
-import amazed.solver.ForkJoinSolver;
+import amazed.solver.SolutionCache;
+import amazed.solver.SolveBudgetExceededException;
+import amazed.solver.SolveCancelledException;
+import amazed.solver.Solvers;
 
 /**
  * <code>Amazed</code> is a simple application class that applies a
  * solver to a maze.
  * <p>
  * This class supports sequential solvers of class
- * <code>SequentialSolver</code> and fork/join solvers of class
- * <code>ForkJoinSolver</code>. It runs both using the common pool of
+ * <code>SequentialSolver</code>, fork/join solvers of class
+ * <code>ForkJoinSolver</code>, and any other solver known to
+ * <code>Solvers</code>. It runs them using the common pool of
  * <code>java.util.concurrent.ForkJoinPool</code>; thus, the solvers
  * must be a subtype of
  * <code>RecursiveTask&lt;List&lt;Integer&gt;&gt;</code>. After creating an
@@ -22,6 +28,11 @@ import amazed.solver.ForkJoinSolver;
  * method <code>solve</code>. After <code>solve</code> terminates, the
  * solution can be displayed by calling method
  * <code>showSolution</code>.
+ * <p>
+ * When system property <code>amazed.solutions.file</code> is set, and
+ * the search is neither animated nor recorded, <code>solve</code>
+ * looks the maze up in the {@link SolutionCache} saved in that file
+ * first, and saves the outcome of new searches in it.
  *
  * @author  Carlo A. Furia
  */
@@ -30,7 +41,12 @@ public class Amazed
 {
     private Maze maze;
     private RecursiveTask<List<Integer>> solver;
+    private String solverName;
+    // if not null, solve outcomes are looked up and saved here
+    private SolutionCache solutions;
     private List<Integer> path;
+    // if not null, the search is recorded here and replayed by showSolution
+    private MoveJournal journal;
 
     /**
      * Creates a maze reading from map file <code>map</code>.
@@ -54,9 +70,56 @@ public class Amazed
      *                         there is no graphical display at all
      */
     public Amazed(String map, boolean sequentialSolver, int forkAfter, int animationDelay)
+    {
+        this(map, sequentialSolver ? Solvers.SEQUENTIAL : Solvers.PARALLEL,
+             forkAfter, animationDelay);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, to be
+     * searched by the solver with a given name.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverName       the name of the solver, as accepted by
+     *                         {@link amazed.solver.Solvers#create(String, Maze, int)}
+     * @param forkAfter        the number of steps (visited nodes) after
+     *                         which a parallel task is forked
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     */
+    public Amazed(String map, String solverName, int forkAfter, int animationDelay)
+    {
+        this(map, solverName, forkAfter, animationDelay, false);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, to be
+     * searched by the solver with a given name, optionally recording
+     * the search for later replay.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverName       the name of the solver, as accepted by
+     *                         {@link amazed.solver.Solvers#create(String, Maze, int)}
+     * @param forkAfter        the number of steps (visited nodes) after
+     *                         which a parallel task is forked
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation, as in
+     *                         {@link #Amazed(String, boolean, int, int)};
+     *                         ignored when recording
+     * @param record           if <code>true</code>, the search runs at
+     *                         full speed recording the players' moves
+     *                         in a {@link MoveJournal}, and
+     *                         <code>showSolution</code> replays them
+     */
+    public Amazed(String map, String solverName, int forkAfter, int animationDelay, boolean record)
     {
         maze = new Maze(map);
-        if (animationDelay >= 0) {
+        if (record) {
+            journal = new MoveJournal();
+            maze.setJournal(journal);
+            animationDelay = 0;
+        } else if (animationDelay >= 0) {
             EventQueue.invokeLater(new Runnable() {
                 @Override
                 public void run() {
@@ -66,10 +129,15 @@ public class Amazed
             });
         }
         maze.setDelay(animationDelay);
-        if (sequentialSolver)
-            solver = new SequentialSolver(maze);
-        else
-            solver = new ForkJoinSolver(maze, forkAfter);
+        solver = Solvers.create(solverName, maze, forkAfter);
+        this.solverName = solverName;
+        if (!record && animationDelay <= 0 && System.getProperty(SolutionCache.FILE_PROPERTY) != null) {
+            try {
+                solutions = SolutionCache.fromProperties();
+            } catch (IOException e) {
+                System.err.println("Ignoring solution cache: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -77,9 +145,48 @@ public class Amazed
      * to screen the outcome of the search.
      */
     public void solve()
+    {
+        solve(0);
+    }
+
+    /**
+     * Runs the solver on the maze, waits for termination or for a
+     * deadline, and prints to screen the outcome of the search. A
+     * search still running at the deadline is abandoned, as described
+     * in {@link Solvers#solveAsync(RecursiveTask, ForkJoinPool, long)}.
+     *
+     * @param timeoutMillis   the time allowed to the search, in
+     *                        milliseconds; <code>0</code> or less for
+     *                        no deadline
+     */
+    public void solve(long timeoutMillis)
     {
         ForkJoinPool pool = ForkJoinPool.commonPool();
-        path = pool.invoke(solver);
+        List<Integer> cached = solutions == null ? null : solutions.get(maze, solverName);
+        if (cached != null) {
+            System.out.println("Outcome found in solution cache");
+            path = cached.isEmpty() ? null : cached;
+        } else {
+            try {
+                path = Solvers.solveAsync(solver, pool, timeoutMillis).join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof SolveBudgetExceededException
+                      || e.getCause() instanceof SolveCancelledException))
+                    throw e;
+                System.out.println("Search abandoned: " + e.getCause().getMessage());
+                path = null;
+                pool.shutdown();
+                return;
+            }
+            if (solutions != null) {
+                solutions.put(maze, solverName, path);
+                try {
+                    solutions.save();
+                } catch (IOException e) {
+                    System.err.println("Cannot save solution cache: " + e.getMessage());
+                }
+            }
+        }
         if (path != null && maze.isValidPath(path))
             System.out.println("Goal found :-D");
         else
@@ -91,14 +198,60 @@ public class Amazed
      * Displays the solution by removing all players and marking a
      * path from the start node to a goal on the maze graphical
      * representation. The method only removes the players if no
-     * solution has been found.
+     * solution has been found. When recording, it opens a window
+     * replaying the recorded search instead, which shows the solution
+     * at the end of the replay.
      */
     public void showSolution()
     {
+        if (journal != null) {
+            Recording recording = recording();
+            List<Integer> solution = path;
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    MazeFrame ex = new MazeFrame(maze, recording, solution);
+                    ex.setVisible(true);
+                }
+            });
+            return;
+        }
         maze.removePlayers();
         if (path != null) {
             maze.markPath(path);
         }
     }
-}
 
+    /**
+     * Writes PNG frames of the recorded search into a directory,
+     * without any graphical display, followed by a frame with the
+     * solution marked if one was found. The maze must have been
+     * created with recording on, and solved.
+     *
+     * @param directory   the directory where the files are written
+     * @param nFrames     the number of frames of the search
+     * @param cellSize    the side of a cell in pixels, as in
+     *                    {@link FrameRenderer#FrameRenderer(Maze, int)}
+     * @return            the number of files written
+     * @throws IOException if a file cannot be written
+     */
+    public int writeFrames(File directory, int nFrames, int cellSize)
+    throws IOException
+    {
+        if (journal == null)
+            throw new IllegalStateException("The search was not recorded");
+        directory.mkdirs();
+        FrameRenderer renderer = new FrameRenderer(maze, cellSize);
+        return renderer.writeFrames(recording(), path, directory, nFrames);
+    }
+
+    // the recorded search, warning if the journal lost events
+    private Recording recording()
+    {
+        Recording recording = journal.recording();
+        if (recording.lostEvents() > 0)
+            System.err.println("Warning: the recording lost its " + recording.lostEvents()
+                               + " oldest events; players spawned by them are not replayed");
+        return recording;
+    }
+}
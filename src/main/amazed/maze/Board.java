@@ -2,15 +2,12 @@ package amazed.maze;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 
 public class Board
@@ -21,36 +18,62 @@ public class Board
     private int nRows;
     private int nCols;
 
-    // players currently on the board
-    // player identifier --> player object
-    private final Map<Integer, Player> players;
-    // count of number of registered players, to ensure unique player ids
-    private final AtomicInteger nPlayers = new AtomicInteger();
+    // players currently on the board, created with the board's cells
+    private PlayerRegistry players;
 
-    // unique node id --> coordinate position of node on board
-    // after creation, read-only access
-    private Map<Integer, Position> idToCell;
+    // unique node id <--> index row * nCols + col of node on board,
+    // computed rather than stored; after creation, read-only access
+    private CellIds ids;
 
-    // empty board
-    Board(int nRows, int nCols)
+    // cells whose appearance changed since the renderer last drew them
+    private DirtyCells dirty;
+
+    // number of changes to cells since creation, and the hash of the
+    // cells' contents as of change number hashedVersion
+    private volatile int version;
+    private String contentHash;
+    private int hashedVersion;
+
+    // empty board whose cells will have the ids of scheme ids
+    Board(int nRows, int nCols, CellIds ids)
     {
         board = new Cell[nRows][nCols];
         this.nRows = nRows;
         this.nCols = nCols;
-        players = new ConcurrentHashMap<>();
-        idToCell = new HashMap<>();
+        this.ids = ids;
+        dirty = new DirtyCells(nRows * nCols);
+        players = new PlayerRegistry(nRows * nCols, dirty);
     }
 
     // board from map `filename'
     Board(String filename)
     {
-        try {
-            readMap(filename);
+        try (Reader reader = new FileReader(filename)) {
+            readMap(reader);
         } catch (IOException e) {
             System.err.println("Error: cannot open map file " + filename);
             System.exit(1);
         }
-        players = new ConcurrentHashMap<>();
+        dirty = new DirtyCells(nRows * nCols);
+        players = new PlayerRegistry(nRows * nCols, dirty);
+    }
+
+    // board from the text of a map read from `reader', which is not closed;
+    // throws IOException if the text is not a complete map
+    Board(Reader reader)
+    throws IOException
+    {
+        readMap(reader);
+        if (board == null)
+            throw new IOException("Map has no size line");
+        for (Cell[] line: board) {
+            for (Cell cell: line) {
+                if (cell == null)
+                    throw new IOException("Map has fewer cells than its size");
+            }
+        }
+        dirty = new DirtyCells(nRows * nCols);
+        players = new PlayerRegistry(nRows * nCols, dirty);
     }
 
     Cell getCell(int row, int col)
@@ -58,6 +81,12 @@ public class Board
         return board[row][col];
     }
 
+    // while building the board: put cell at row, col
+    void setCell(int row, int col, Cell cell)
+    {
+        board[row][col] = cell;
+    }
+
     Cell getCell(Position position)
     {
         return board[position.getRow()][position.getCol()];
@@ -65,12 +94,19 @@ public class Board
 
     Cell getCell(int id)
     {
-        return getCell(idToCell.get(id));
+        return getCell(getPosition(id));
     }
 
+    // position of node id, or null if no cell has it
     Position getPosition(int id)
     {
-        return idToCell.get(id);
+        int index = ids.index(id);
+        return index < 0 ? null : new Position(index / nCols, index % nCols);
+    }
+
+    CellIds getCellIds()
+    {
+        return ids;
     }
 
     int getWidth()
@@ -83,6 +119,17 @@ public class Board
         return nRows * board[0][0].getHeight();
     }
 
+    DirtyCells getDirtyCells()
+    {
+        return dirty;
+    }
+
+    // the cell at row, col looks different now
+    private void changed(int row, int col)
+    {
+        dirty.mark(row * nCols + col);
+    }
+
     int getRows()
     {
         return nRows;
@@ -108,73 +155,111 @@ public class Board
         for (Position position: positionPath) {
             int row = position.getRow(), col = position.getCol();
             board[row][col] = getCell(position).marked();
+            changed(row, col);
+        }
+        version++;
+    }
+
+    // thread unsafe; undoes markPath(path)
+    void unmarkPath(List<Integer> path)
+    {
+        List<Position> positionPath = pathToPositions(path);
+        for (Position position: positionPath) {
+            int row = position.getRow(), col = position.getCol();
+            board[row][col] = getCell(position).unmarked();
+            changed(row, col);
+        }
+        version++;
+    }
+
+    // hexadecimal SHA-256 hash of the size and of the tile of every
+    // cell, recomputed only after cells change
+    synchronized String contentHash()
+    {
+        int current = version;
+        if (contentHash == null || hashedVersion != current) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // every JVM implements SHA-256
+                throw new AssertionError(e);
+            }
+            digest.update(ByteBuffer.allocate(8).putInt(nRows).putInt(nCols).array());
+            byte[] tiles = new byte[nCols];
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < nCols; col++)
+                    tiles[col] = (byte) board[row][col].getTile().ordinal();
+                digest.update(tiles);
+            }
+            contentHash = BoardSnapshot.hex(digest.digest());
+            hashedVersion = current;
         }
+        return contentHash;
     }
 
-    private void readMap(String mapFile)
-    throws FileNotFoundException, IOException
+    private void readMap(Reader mapReader)
+    throws IOException
     {
         Cell cell;
         int row = 0, col = 0, nId = 0;
-        List<Integer> ids = null;
-        try (BufferedReader br = new BufferedReader(new FileReader(mapFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // remove whitespaces
-                line = line.replaceAll("\\s", "");
-                StringReader lineReader = new StringReader(line);
-                int ch, id = 0;
-                line_loop:
-                while ((ch = lineReader.read()) != -1) {
-                    switch (ch) {
-                    case '@':
-                        break line_loop;
-                    case '$':
-                        Pattern p = Pattern.compile("^\\$(\\d+),(\\d+)$");
-                        Matcher m = p.matcher(line);
-                        if (m.find()) {
-                            nRows = Integer.parseInt(m.group(1));
-                            nCols = Integer.parseInt(m.group(2));
-                            board = new Cell[nRows][nCols];
-                            int numCells = nRows*nCols;
-                            ids = new ArrayList<>(2*numCells);
-                            for (int i = -numCells; i < numCells; i++)
-                                ids.add(i);
-                            Collections.shuffle(ids);
-                            idToCell = new HashMap<>(numCells);
-                        }
-                        break line_loop;
-                    default:
-                        if (row < nRows && col < nCols)
-                            id = ids.get(nId++);
-                        if (ch == Tile.EMPTY.getChar())
-                            cell = new Cell(Tile.EMPTY, id);
-                        else if (ch == Tile.SOLID.getChar())
-                            cell = new Cell(Tile.SOLID, id);
-                        else if (ch == Tile.BRICK.getChar())
-                            cell = new Cell(Tile.BRICK, id);
-                        else if (ch == Tile.HEART.getChar())
-                            cell = new Cell(Tile.HEART, id);
-                        else {
-                            System.out.println("Unrecognized symbol " +
-                                               Character.toString((char) ch) + " on " +
-                                               "row " + row + " column " + col);
-                            System.out.println("... using empty cell instead.");
-                            cell = new Cell(Tile.EMPTY, id);
+        BufferedReader br = new BufferedReader(mapReader);
+        String line;
+        while ((line = br.readLine()) != null) {
+            // remove whitespaces
+            line = line.replaceAll("\\s", "");
+            StringReader lineReader = new StringReader(line);
+            int ch, id = 0;
+            line_loop:
+            while ((ch = lineReader.read()) != -1) {
+                switch (ch) {
+                case '@':
+                    break line_loop;
+                case '$':
+                    Pattern p = Pattern.compile("^\\$(\\d+),(\\d+)$");
+                    Matcher m = p.matcher(line);
+                    if (m.find()) {
+                        nRows = Integer.parseInt(m.group(1));
+                        nCols = Integer.parseInt(m.group(2));
+                        board = new Cell[nRows][nCols];
+                        try {
+                            ids = CellIds.fromProperty(nRows*nCols);
+                        } catch (IllegalArgumentException e) {
+                            throw new IOException(e.getMessage(), e);
                         }
                     }
-                    // Ignore rows and columns beyond the declared ones
-                    if (row < nRows && col < nCols) {
-                        board[row][col] = cell;
-                        idToCell.put(id, new Position(row, col));
-                        col += 1;
+                    break line_loop;
+                default:
+                    if (ids == null)
+                        throw new IOException("Map has cells before its size line");
+                    if (row < nRows && col < nCols)
+                        id = ids.id(nId++);
+                    if (ch == Tile.EMPTY.getChar())
+                        cell = new Cell(Tile.EMPTY, id);
+                    else if (ch == Tile.SOLID.getChar())
+                        cell = new Cell(Tile.SOLID, id);
+                    else if (ch == Tile.BRICK.getChar())
+                        cell = new Cell(Tile.BRICK, id);
+                    else if (ch == Tile.HEART.getChar())
+                        cell = new Cell(Tile.HEART, id);
+                    else {
+                        System.out.println("Unrecognized symbol " +
+                                           Character.toString((char) ch) + " on " +
+                                           "row " + row + " column " + col);
+                        System.out.println("... using empty cell instead.");
+                        cell = new Cell(Tile.EMPTY, id);
                     }
                 }
-                if (nCols > 0 && col == nCols) {
-                    row += 1;
-                    col = 0;
+                // Ignore rows and columns beyond the declared ones
+                if (row < nRows && col < nCols) {
+                    board[row][col] = cell;
+                    col += 1;
                 }
             }
+            if (nCols > 0 && col == nCols) {
+                row += 1;
+                col = 0;
+            }
         }
     }
 
@@ -184,29 +269,19 @@ public class Board
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nCols; col++) {
                 result.append(' ');
-                result.append(board[row][col].getText());
+                result.append(countPlayers(row, col) > 0 ? 'P' : board[row][col].getText());
             }
             result.append('\n');
         }
         return result.toString();
     }
 
-    // printable deep copy of the board with all players in consistent positions
-    Board consistentBoard()
+    // copy the current positions of all players into snapshot, in
+    // time proportional to the number of players and without blocking
+    // players that are moving; painters draw the players from it
+    void snapshotPlayers(PositionSnapshot snapshot)
     {
-        Board result = new Board(nRows, nCols);
-        for (int row = 0; row < nRows; row++) {
-            for (int col = 0; col < nCols; col++) {
-                Cell cell = board[row][col];
-                result.board[row][col] = new Cell(cell.getTile(), cell.getId());
-            }
-        }
-        for (Player player: players.values()) {
-            Position pos = player.getPosition();
-            Player newPlayer = new Player(player.getId(), player.getName());
-            newPlayer.onBoard(result, pos.getRow(), pos.getCol());
-        }
-        return result;
+        players.snapshot(snapshot);
     }
 
     // is the position row, col a valid position on the board?
@@ -242,54 +317,35 @@ public class Board
         return null;
     }
 
-    void register(Player player, int row, int col)
+    // number of players in the cell at row, col
+    int countPlayers(int row, int col)
     {
-        if (isOnBoard(row, col)) {
-            board[row][col].add(player);
-            players.put(player.getId(), player);
-        }
+        return players.count(row * nCols + col);
     }
 
+    // new player on node id, returning its identifier; identifiers of
+    // removed players are reused
     int newPlayer(int id)
     {
-        int playerId = nPlayers.getAndIncrement();
-        Player player = new Player(playerId, "thread_" + playerId);
-        player.onBoard(this, id);
-        return playerId;
-    }
-
-    void deregister(Player player, int row, int col)
-    {
-        if (isOnBoard(row, col)) {
-            board[row][col].remove(player);
-            players.remove(player.getId());
-        }
+        Position position = getPosition(id);
+        return players.add(position.getRow() * nCols + position.getCol());
     }
 
-    void deregisterAll()
+    // move player playerId to node id, if it is accessible
+    void movePlayer(int playerId, int id)
     {
-        for (Map.Entry<Integer, Player> entry: players.entrySet()) {
-            Player player = entry.getValue();
-            Position position = player.getPosition();
-            deregister(player, position.getRow(), position.getCol());
-        }
+        Position position = getPosition(id);
+        if (position != null && isAccessible(position.getRow(), position.getCol()))
+            players.move(playerId, position.getRow() * nCols + position.getCol());
     }
 
-    Player getPlayer(int playerId)
+    void removePlayer(int playerId)
     {
-        return players.get(playerId);
+        players.remove(playerId);
     }
 
-    // move registered player from its current position to newRow, newCol
-    void move(Player player, int newRow, int newCol)
+    void deregisterAll()
     {
-        int row = player.getRow();
-        int col = player.getCol();
-        if (isOnBoard(newRow, newCol) && players.containsKey(player.getId())) {
-            board[row][col].remove(player);
-            board[newRow][newCol].add(player);
-            player.setRow(newRow);
-            player.setCol(newCol);
-        }
+        players.removeAll();
     }
 }
@@ -0,0 +1,219 @@
+package amazed.maze;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+
+// custom-painted view of a board that only draws the cells inside the
+// visible rectangle of its scroll pane. Visible cells are drawn into a
+// cached image the size of the viewport, and only cells reported dirty
+// by the board are redrawn on refresh.
+//
+// the zoom level sets how cells map to pixels: tile images (scaled
+// down when zooming out), solid colors down to 1 pixel per cell, and
+// beyond that heat tiles, where each pixel aggregates a square block
+// of cells, shaded by how many of them are accessible and reddened by
+// how many players are in it. Cells are drawn by a BoardPainter, with
+// the players of a snapshot taken before every redraw
+class BoardCanvas extends JComponent implements Scrollable
+{
+    private static final long serialVersionUID = 1L;
+
+    // positive: pixels per cell; negative: cells per pixel (side of a block)
+    static final int[] ZOOMS = { 0, 25, 12, 6, 3, 1, -2, -4, -8, -16, -32, -64 };
+    // ZOOMS[0] stands for the size of the tile images
+    static final String[] ZOOM_NAMES = {
+        "tiles", "25 px", "12 px", "6 px", "3 px", "1 px",
+        "2x2 heat", "4x4 heat", "8x8 heat", "16x16 heat", "32x32 heat", "64x64 heat"
+    };
+
+    private final Board board;
+    private final int imageSize;
+
+    // draws cells at the current zoom
+    private BoardPainter painter;
+    private int zoom;
+
+    // cached image of the visible region, and the region it shows
+    private BufferedImage buffer;
+    private Rectangle bufferRect = new Rectangle();
+
+    // bounds, in component coordinates, of the cells redrawn by a refresh
+    private Rectangle repainted;
+    // players' positions, reused at every redraw
+    private final PositionSnapshot positions = new PositionSnapshot();
+    // cells drained by a refresh, redrawn once they are all known
+    private int[] drained = new int[64];
+    private int nDrained;
+
+    BoardCanvas(Board board)
+    {
+        this.board = board;
+        this.imageSize = board.getCell(0, 0).getWidth();
+        setOpaque(true);
+        setZoom(0);
+    }
+
+    int getZoom()
+    {
+        return zoom;
+    }
+
+    // change zoom level to ZOOMS[level]
+    void setZoom(int level)
+    {
+        zoom = Math.max(0, Math.min(level, ZOOMS.length - 1));
+        int value = zoom == 0 ? imageSize : ZOOMS[zoom];
+        painter = new BoardPainter(board, value, value < 0 ? -value : 1);
+        bufferRect = new Rectangle();
+        revalidate();
+        repaint();
+    }
+
+    // zoom in as much as possible with the board fitting in width x
+    // height pixels; returns the zoom level chosen
+    int zoomToFit(int width, int height)
+    {
+        for (int level = 0; level < ZOOMS.length; level++) {
+            setZoom(level);
+            Dimension size = getPreferredSize();
+            if (size.width <= width && size.height <= height)
+                return level;
+        }
+        return ZOOMS.length - 1;
+    }
+
+    // redraw the visible cells changed since the last refresh, and
+    // repaint them
+    void refresh()
+    {
+        if (buffer == null || !bufferRect.equals(getVisibleRect())) {
+            // the view moved: discard the changes, paintComponent redraws everything
+            board.getDirtyCells().drain(cell -> { });
+            repaint();
+            return;
+        }
+        repainted = null;
+        nDrained = 0;
+        board.getDirtyCells().drain(cell -> {
+            if (nDrained == drained.length)
+                drained = Arrays.copyOf(drained, 2 * drained.length);
+            drained[nDrained++] = cell;
+        });
+        // a player's new cell is marked before the player moves there:
+        // take the snapshot after draining, so that it shows the move
+        board.snapshotPlayers(positions);
+        Graphics2D g = buffer.createGraphics();
+        try {
+            int cols = board.getCols();
+            for (int i = 0; i < nDrained; i++)
+                redraw(g, drained[i] / cols, drained[i] % cols);
+        } finally {
+            g.dispose();
+        }
+        if (repainted != null)
+            repaint(repainted);
+    }
+
+    // redraw the pixels of cell row, col if they are visible
+    private void redraw(Graphics2D g, int row, int col)
+    {
+        Rectangle cell;
+        int cellSize = painter.getCellSize(), block = painter.getBlock();
+        if (block > 1) {
+            row = row / block * block;
+            col = col / block * block;
+            cell = new Rectangle(col / block, row / block, 1, 1);
+        } else {
+            cell = new Rectangle(col * cellSize, row * cellSize, cellSize, cellSize);
+        }
+        if (!cell.intersects(bufferRect))
+            return;
+        painter.draw(g, positions, row, col, cell.x - bufferRect.x, cell.y - bufferRect.y);
+        repainted = repainted == null ? cell : repainted.union(cell);
+    }
+
+    // redraw the whole visible region into a buffer of its size
+    private void redrawVisible(Rectangle visible)
+    {
+        if (buffer == null || buffer.getWidth() < visible.width || buffer.getHeight() < visible.height)
+            buffer = new BufferedImage(Math.max(1, visible.width), Math.max(1, visible.height),
+                                       BufferedImage.TYPE_INT_ARGB);
+        bufferRect = new Rectangle(visible);
+        Graphics2D g = buffer.createGraphics();
+        try {
+            g.setColor(getBackground() == null ? Color.BLACK : getBackground());
+            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
+            int step = painter.step();
+            int firstCol = visible.x / step, firstRow = visible.y / step;
+            int lastCol = (visible.x + visible.width - 1) / step;
+            int lastRow = (visible.y + visible.height - 1) / step;
+            board.snapshotPlayers(positions);
+            painter.drawUnits(g, positions, firstRow, firstCol, lastRow, lastCol, -visible.x, -visible.y);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle visible = getVisibleRect();
+        if (visible.isEmpty())
+            return;
+        if (buffer == null || !bufferRect.equals(visible))
+            redrawVisible(visible);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = visible;
+        Rectangle area = clip.intersection(bufferRect);
+        int sx = area.x - bufferRect.x, sy = area.y - bufferRect.y;
+        g.drawImage(buffer, area.x, area.y, area.x + area.width, area.y + area.height,
+                    sx, sy, sx + area.width, sy + area.height, null);
+    }
+
+    // size of the whole board at the current zoom, in pixels
+    @Override
+    public Dimension getPreferredSize()
+    {
+        return painter.size();
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction)
+    {
+        return Math.max(painter.getCellSize(), 8);
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction)
+    {
+        return orientation == SwingConstants.HORIZONTAL ? visible.width : visible.height;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight()
+    {
+        return false;
+    }
+}
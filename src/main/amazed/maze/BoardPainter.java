@@ -0,0 +1,186 @@
+package amazed.maze;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+
+// draws the cells of a board at a fixed scale: either cellSize pixels
+// per cell, or (block > 1) one pixel per block x block square of
+// cells. Used by the on-screen BoardCanvas and the offscreen
+// FrameRenderer.
+//
+// players are drawn from a PositionSnapshot taken by the caller, so
+// that all cells of a drawing show the players at the same moment. A
+// painter only reads the board and the snapshot, so several threads
+// can draw disjoint regions of the same image at once, each with its
+// own Graphics2D
+class BoardPainter
+{
+    // smallest cell size at which tile images are drawn
+    private static final int MIN_IMAGE_SIZE = 8;
+    // smallest cell size at which the count of players is drawn
+    private static final int MIN_TEXT_SIZE = 24;
+
+    private static final Font COUNT_FONT = new Font(null, Font.BOLD, 16);
+
+    private static final Color EMPTY_COLOR = new Color(0x1a, 0x9a, 0x00);
+    private static final Color WALL_COLOR = new Color(0x40, 0x40, 0x48);
+    private static final Color BRICK_COLOR = new Color(0x90, 0x90, 0xa0);
+    private static final Color GOAL_COLOR = new Color(0xff, 0x40, 0xa0);
+    private static final Color MARKED_COLOR = new Color(0xff, 0xe0, 0x40);
+    private static final Color PLAYER_COLOR = new Color(0xff, 0x20, 0x20);
+
+    private final Board board;
+    private final int cellSize;
+    private final int block;
+
+    BoardPainter(Board board, int cellSize, int block)
+    {
+        this.board = board;
+        this.cellSize = Math.max(1, cellSize);
+        this.block = Math.max(1, block);
+    }
+
+    // pixels per cell, 1 when drawing blocks
+    int getCellSize()
+    {
+        return cellSize;
+    }
+
+    // cells per pixel side, 1 when drawing cells
+    int getBlock()
+    {
+        return block;
+    }
+
+    // pixels per unit drawn, be it a cell or a block
+    int step()
+    {
+        return block > 1 ? 1 : cellSize;
+    }
+
+    // number of unit rows and columns covering the board
+    int unitRows()
+    {
+        return (board.getRows() + block - 1) / block;
+    }
+
+    int unitCols()
+    {
+        return (board.getCols() + block - 1) / block;
+    }
+
+    // size of the whole board, in pixels
+    Dimension size()
+    {
+        return new Dimension(unitCols() * step(), unitRows() * step());
+    }
+
+    // draw units (cells or blocks) firstRow..lastRow, firstCol..lastCol
+    // (inclusive), with the top-left corner of unit 0, 0 at x, y, and
+    // the players in positions
+    void drawUnits(Graphics2D g, PositionSnapshot positions,
+                   int firstRow, int firstCol, int lastRow, int lastCol, int x, int y)
+    {
+        int step = step();
+        for (int i = firstRow; i <= Math.min(lastRow, unitRows() - 1); i++) {
+            for (int j = firstCol; j <= Math.min(lastCol, unitCols() - 1); j++)
+                draw(g, positions, i * block, j * block, x + j * step, y + i * step);
+        }
+    }
+
+    // draw the cell (or block of cells) at row, col at x, y, with the
+    // players in positions
+    void draw(Graphics2D g, PositionSnapshot positions, int row, int col, int x, int y)
+    {
+        if (block > 1) {
+            g.setColor(heat(positions, row, col));
+            g.fillRect(x, y, 1, 1);
+            return;
+        }
+        Cell cell = board.getCell(row, col);
+        int index = row * board.getCols() + col;
+        int players = positions.countPlayers(index);
+        int player = positions.playerAt(index);
+        if (cellSize < MIN_IMAGE_SIZE) {
+            g.setColor(players > 0 ? PLAYER_COLOR : color(cell.getTile()));
+            g.fillRect(x, y, cellSize, cellSize);
+            return;
+        }
+        g.drawImage(cell.getTile().getImage(), x, y, cellSize, cellSize, null);
+        if (player != PlayerRegistry.NONE)
+            g.drawImage(PlayerRegistry.image(player), x, y, cellSize, cellSize, null);
+        if (players > 1 && player != PlayerRegistry.NONE && cellSize >= MIN_TEXT_SIZE) {
+            // number of players in the bottom-right corner
+            String count = Integer.toString(players);
+            g.setFont(COUNT_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            g.setColor(visibleTextColor(player));
+            g.drawString(count, x + cellSize - metrics.stringWidth(count) - 2,
+                         y + cellSize - metrics.getDescent() - 1);
+        }
+    }
+
+    private static Color visibleTextColor(int playerId)
+    {
+        switch (1 + playerId % 4) {
+        case 1:
+            return Color.WHITE;
+        case 2:
+            return Color.RED;
+        case 3:
+        case 4:
+            return Color.BLACK;
+        default:
+            return Color.RED;
+        }
+    }
+
+    private static Color color(Tile tile)
+    {
+        switch (tile) {
+        case EMPTY:
+            return EMPTY_COLOR;
+        case BRICK:
+            return BRICK_COLOR;
+        case HEART:
+            return GOAL_COLOR;
+        case MARKED:
+        case FOUND:
+            return MARKED_COLOR;
+        default:
+            return WALL_COLOR;
+        }
+    }
+
+    // color of the block of cells with top-left corner row, col
+    private Color heat(PositionSnapshot positions, int row, int col)
+    {
+        int accessible = 0, cells = 0, players = 0;
+        boolean goal = false, marked = false;
+        for (int r = row; r < Math.min(row + block, board.getRows()); r++) {
+            for (int c = col; c < Math.min(col + block, board.getCols()); c++) {
+                Cell cell = board.getCell(r, c);
+                cells += 1;
+                if (cell.isAccessible())
+                    accessible += 1;
+                goal |= cell.isHeart();
+                marked |= cell.getTile() == Tile.MARKED || cell.getTile() == Tile.FOUND;
+                players += positions.countPlayers(r * board.getCols() + c);
+            }
+        }
+        if (players > 0) {
+            float share = Math.min(1f, (float) players * 4 / cells);
+            return new Color(0.5f + share / 2, 0.1f, 0.1f);
+        }
+        if (marked)
+            return MARKED_COLOR;
+        if (goal)
+            return GOAL_COLOR;
+        float open = (float) accessible / cells;
+        return new Color(0.25f * (1 - open), 0.2f + 0.4f * open, 0.25f * (1 - open));
+    }
+}
@@ -0,0 +1,196 @@
+package amazed.maze;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// loads boards from snapshots of previously parsed maps, so that a
+// map that hasn't changed is neither parsed nor given new node ids.
+//
+// A snapshot is a file in the snapshot directory, named after the
+// SHA-256 hash of the map's text and the format version, holding:
+// magic, version, hash, rows, cols, cell id scheme (a byte) and its
+// seed (header), then the tile of every cell as a byte, in row-major
+// order. It is memory-mapped to be read. Goals, adjacency and cell ids
+// are not stored: they follow from the tiles and the id scheme.
+//
+// The ids of a board read from a snapshot follow system property
+// amazed.cellids, as those of a parsed board do. Only if it asks for
+// the default, randomly seeded Feistel scheme is the Feistel seed
+// stored in the snapshot reused, so that the ids of an unchanged map
+// stay the same from one run to the next.
+//
+// The directory is given by system property amazed.snapshot.dir,
+// by default amazed-boards in the temporary directory; an empty
+// value disables snapshots.
+class BoardSnapshot
+{
+    static final String DIR_PROPERTY = "amazed.snapshot.dir";
+    static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x414d5a42; // "AMZB"
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + HASH_BYTES + 4 + 4 + 1 + 8;
+    private static final byte IDENTITY_IDS = 0;
+    private static final byte FEISTEL_IDS = 1;
+    private static final Tile[] TILES = Tile.values();
+
+    private BoardSnapshot()
+    {
+    }
+
+    private static File directory()
+    {
+        String dir = System.getProperty(DIR_PROPERTY,
+                                        new File(System.getProperty("java.io.tmpdir"), "amazed-boards").getPath());
+        return dir.isEmpty() ? null : new File(dir);
+    }
+
+    // the board of map file `filename', from its snapshot if there is
+    // one, otherwise parsed and then saved as a snapshot
+    static Board load(String filename)
+    {
+        File dir = directory();
+        byte[] map;
+        try {
+            map = Files.readAllBytes(new File(filename).toPath());
+        } catch (IOException e) {
+            // let the board report the error as usual
+            return new Board(filename);
+        }
+        if (dir == null)
+            return parse(filename, map);
+        byte[] hash = hash(map);
+        File file = new File(dir, hex(hash) + "-v" + FORMAT_VERSION + ".board");
+        if (file.isFile()) {
+            try {
+                return read(file.toPath(), hash);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring snapshot " + file + ": " + e.getMessage());
+            }
+        }
+        Board board = parse(filename, map);
+        try {
+            write(board, hash, dir, file.toPath());
+        } catch (IOException e) {
+            // the snapshot only speeds up the next start
+            System.err.println("Cannot write snapshot " + file + ": " + e);
+        }
+        return board;
+    }
+
+    private static Board parse(String filename, byte[] map)
+    {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(map), StandardCharsets.UTF_8)) {
+            return new Board(reader);
+        } catch (IOException e) {
+            System.err.println("Error: invalid map file " + filename + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    static Board read(Path path, byte[] hash)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+                throw new IOException("not a board snapshot");
+            if (buffer.getInt() != FORMAT_VERSION)
+                throw new IOException("format version differs");
+            byte[] stored = new byte[HASH_BYTES];
+            buffer.get(stored);
+            if (!MessageDigest.isEqual(stored, hash))
+                throw new IOException("snapshot of another map");
+            int nRows = buffer.getInt(), nCols = buffer.getInt();
+            byte scheme = buffer.get();
+            long seed = buffer.getLong();
+            int cells = nRows * nCols;
+            if (nRows <= 0 || nCols <= 0 || buffer.remaining() != (long) cells)
+                throw new IOException("truncated snapshot");
+            if (scheme != IDENTITY_IDS && scheme != FEISTEL_IDS)
+                throw new IOException("unknown cell id scheme " + scheme);
+            CellIds ids;
+            if (scheme == FEISTEL_IDS && System.getProperty(CellIds.PROPERTY, "feistel").equals("feistel"))
+                ids = CellIds.feistel(cells, seed);
+            else
+                ids = CellIds.fromProperty(cells);
+            byte[] tiles = new byte[cells];
+            buffer.get(tiles);
+            Board board = new Board(nRows, nCols, ids);
+            for (int i = 0; i < cells; i++)
+                board.setCell(i / nCols, i % nCols, new Cell(TILES[tiles[i]], ids.id(i)));
+            return board;
+        }
+    }
+
+    // write the snapshot to a temporary file first, so that readers
+    // never see a partial snapshot; boards with a cell id scheme that
+    // cannot be stored get no snapshot
+    static void write(Board board, byte[] hash, File dir, Path path)
+    throws IOException
+    {
+        CellIds ids = board.getCellIds();
+        byte scheme;
+        long seed = 0;
+        if (ids instanceof IdentityCellIds) {
+            scheme = IDENTITY_IDS;
+        } else if (ids instanceof FeistelCellIds) {
+            scheme = FEISTEL_IDS;
+            seed = ((FeistelCellIds) ids).seed();
+        } else {
+            return;
+        }
+        Files.createDirectories(dir.toPath());
+        int nRows = board.getRows(), nCols = board.getCols();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + nRows * nCols);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).put(hash).putInt(nRows).putInt(nCols);
+        buffer.put(scheme).putLong(seed);
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++)
+                buffer.put((byte) board.getCell(row, col).getTile().ordinal());
+        }
+        buffer.flip();
+        Path temporary = Files.createTempFile(dir.toPath(), "board", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static byte[] hash(byte[] map)
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(map);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM implements SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    static String hex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b: bytes)
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
@@ -1,7 +1,5 @@
 package amazed.maze;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.awt.Image;
 import java.awt.Graphics;
 import java.awt.Toolkit;
@@ -10,7 +8,6 @@ import java.awt.Toolkit;
 class Cell
 {
     private final Tile tile;
-    private final Queue<Player> players;
 
     private final Image image;
     private final Character text;
@@ -22,8 +19,6 @@ class Cell
         this.image = tile.getImage();
         this.text = tile.getText();
         this.id = id;
-
-        this.players = new ConcurrentLinkedQueue<>();
     }
 
     Tile getTile()
@@ -36,20 +31,15 @@ class Cell
         return id;
     }
 
+    // players are drawn by the board, on top of the cell's image
     Image getImage()
     {
-        if (players.isEmpty())
-            return image;
-        else
-            return players.element().getImage();
+        return image;
     }
 
     Character getText()
     {
-        if (players.isEmpty())
-            return text;
-        else
-            return players.element().getText();
+        return text;
     }
 
     int getWidth()
@@ -82,26 +72,18 @@ class Cell
             return new Cell(Tile.MARKED, id);
     }
 
-    public boolean isHeart()
+    // inverse of marked
+    Cell unmarked()
     {
-        return tile == Tile.HEART;
+        if (tile == Tile.FOUND)
+            return new Cell(Tile.HEART, id);
+        if (tile == Tile.MARKED)
+            return new Cell(Tile.EMPTY, id);
+        return this;
     }
 
-    void add(Player player)
-    {
-        if (isAccessible())
-            players.add(player);
-    }
-
-    void remove(Player player)
-    {
-        if (isAccessible())
-            players.remove(player);
-    }
-
-    // return a copy of the players list
-    Player[] getPlayers()
+    public boolean isHeart()
     {
-        return players.toArray(new Player[0]);
+        return tile == Tile.HEART;
     }
 }
@@ -0,0 +1,104 @@
+package amazed.maze;
+
+/**
+ * <code>CellIds</code> assigns node identifiers to the cells of a
+ * board, and finds the cell of an identifier. Cells are numbered by
+ * their <em>index</em>, <code>row * cols + col</code>, from
+ * <code>0</code> to <code>cells() - 1</code>; a scheme maps every
+ * index to a distinct identifier, without storing the mapping.
+ * <p>
+ * Two schemes are provided. The <em>Feistel</em> scheme, the default,
+ * scatters indexes over identifiers between <code>-cells()</code>
+ * and <code>cells() - 1</code> with a keyed permutation, so that
+ * solvers cannot rely on identifiers following the layout of the
+ * maze; the same seed always gives the same identifiers. The
+ * <em>identity</em> scheme uses indexes as identifiers, for
+ * benchmarks that want to leave out the cost of the permutation.
+ * <p>
+ * Boards read from map files use the scheme chosen by system property
+ * <code>amazed.cellids</code>: <code>feistel</code> (with a random
+ * seed), <code>feistel:SEED</code>, or <code>identity</code>.
+ */
+
+public interface CellIds
+{
+    /**
+     * The name of the system property choosing the scheme of new
+     * boards.
+     */
+    String PROPERTY = "amazed.cellids";
+
+    /**
+     * Returns the number of cells numbered by the scheme.
+     *
+     * @return   the number of cells
+     */
+    int cells();
+
+    /**
+     * Returns the identifier of a cell.
+     *
+     * @param index   the index of a cell, between <code>0</code> and
+     *                <code>cells() - 1</code>
+     * @return        the identifier of the cell
+     */
+    int id(int index);
+
+    /**
+     * Returns the cell of an identifier.
+     *
+     * @param id   a node identifier
+     * @return     the index of the cell with identifier <code>id</code>,
+     *             or <code>-1</code> if no cell has it
+     */
+    int index(int id);
+
+    /**
+     * Returns the Feistel scheme of a seed.
+     *
+     * @param cells   the number of cells, at least 1 and at most 2<sup>30</sup>
+     * @param seed    the seed of the permutation
+     * @return        the scheme
+     */
+    static CellIds feistel(int cells, long seed)
+    {
+        return new FeistelCellIds(cells, seed);
+    }
+
+    /**
+     * Returns the identity scheme.
+     *
+     * @param cells   the number of cells, at least 1
+     * @return        the scheme
+     */
+    static CellIds identity(int cells)
+    {
+        return new IdentityCellIds(cells);
+    }
+
+    /**
+     * Returns the scheme chosen by system property
+     * <code>amazed.cellids</code>.
+     *
+     * @param cells   the number of cells
+     * @return        the scheme in the property; a Feistel scheme
+     *                with a random seed if it isn't set
+     * @throws IllegalArgumentException if the property is not a valid scheme
+     */
+    static CellIds fromProperty(int cells)
+    {
+        String scheme = System.getProperty(PROPERTY, "feistel");
+        if (scheme.equals("identity"))
+            return identity(cells);
+        if (scheme.equals("feistel"))
+            return feistel(cells, System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+        if (scheme.startsWith("feistel:")) {
+            try {
+                return feistel(cells, Long.parseLong(scheme.substring("feistel:".length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid seed in " + PROPERTY + "=" + scheme, e);
+            }
+        }
+        throw new IllegalArgumentException("Unknown cell id scheme " + scheme);
+    }
+}
@@ -0,0 +1,70 @@
+package amazed.maze;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+
+// set of cells whose appearance changed since the last drain; cells
+// are indexes row * cols + col. Marking is lock-free and can be done
+// by any thread; draining is meant for a single renderer thread.
+//
+// a summary bit per word of cells lets drain skip clean regions, so
+// its cost is proportional to the changed cells rather than the board
+class DirtyCells
+{
+    private final int nCells;
+    private final AtomicLongArray cells;
+    private final AtomicLongArray summary;
+
+    DirtyCells(int nCells)
+    {
+        this.nCells = nCells;
+        int nWords = (nCells + 63) >>> 6;
+        cells = new AtomicLongArray(nWords);
+        summary = new AtomicLongArray((nWords + 63) >>> 6);
+    }
+
+    void mark(int cell)
+    {
+        int word = cell >>> 6;
+        long bit = 1L << (cell & 63);
+        if ((cells.get(word) & bit) != 0)
+            return;
+        cells.accumulateAndGet(word, bit, DirtyCells::or);
+        long summaryBit = 1L << (word & 63);
+        if ((summary.get(word >>> 6) & summaryBit) == 0)
+            summary.accumulateAndGet(word >>> 6, summaryBit, DirtyCells::or);
+    }
+
+    void markAll()
+    {
+        for (int cell = 0; cell < nCells; cell++)
+            mark(cell);
+    }
+
+    // pass every dirty cell to consumer, and clear it; returns the
+    // number of cells drained
+    int drain(IntConsumer consumer)
+    {
+        int drained = 0;
+        for (int s = 0; s < summary.length(); s++) {
+            long words = summary.getAndSet(s, 0);
+            while (words != 0) {
+                int word = (s << 6) + Long.numberOfTrailingZeros(words);
+                words &= words - 1;
+                long bits = cells.getAndSet(word, 0);
+                while (bits != 0) {
+                    consumer.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                    drained += 1;
+                }
+            }
+        }
+        return drained;
+    }
+
+    private static long or(long a, long b)
+    {
+        return a | b;
+    }
+}
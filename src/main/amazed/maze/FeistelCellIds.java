@@ -0,0 +1,106 @@
+package amazed.maze;
+
+import java.util.SplittableRandom;
+
+// cell ids scattered over [-cells, cells) by a keyed permutation:
+// a balanced Feistel network over the smallest power of four covering
+// the 2 * cells values, restricted to them by cycle walking (values
+// beyond them are permuted again until one falls inside). Both
+// directions are computed on the fly, without tables.
+final class FeistelCellIds
+    implements CellIds
+{
+    private static final int ROUNDS = 4;
+    static final int MAX_CELLS = 1 << 30;
+
+    private final int cells;
+    private final long range;
+    private final int halfBits;
+    private final int halfMask;
+    private final long seed;
+    private final int[] keys = new int[ROUNDS];
+
+    FeistelCellIds(int cells, long seed)
+    {
+        if (cells < 1 || cells > MAX_CELLS)
+            throw new IllegalArgumentException("Cannot number " + cells + " cells");
+        this.cells = cells;
+        this.range = 2L * cells;
+        this.seed = seed;
+        int bits = 64 - Long.numberOfLeadingZeros(range - 1);
+        // an even number of bits, so that both halves have the same size
+        bits = Math.max(2, bits + (bits & 1));
+        this.halfBits = bits / 2;
+        this.halfMask = (1 << halfBits) - 1;
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < ROUNDS; i++)
+            keys[i] = random.nextInt();
+    }
+
+    long seed()
+    {
+        return seed;
+    }
+
+    @Override
+    public int cells()
+    {
+        return cells;
+    }
+
+    @Override
+    public int id(int index)
+    {
+        if (index < 0 || index >= cells)
+            throw new IndexOutOfBoundsException("No cell " + index);
+        long value = index;
+        do {
+            value = permute(value);
+        } while (value >= range);
+        return (int) (value - cells);
+    }
+
+    @Override
+    public int index(int id)
+    {
+        long value = (long) id + cells;
+        if (value < 0 || value >= range)
+            return -1;
+        do {
+            value = unpermute(value);
+        } while (value >= range);
+        return value < cells ? (int) value : -1;
+    }
+
+    // round function: a 32-bit mix of half and key
+    private int round(int half, int key)
+    {
+        int h = (half ^ key) * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & halfMask;
+    }
+
+    private long permute(long value)
+    {
+        int left = (int) (value >>> halfBits), right = (int) (value & halfMask);
+        for (int i = 0; i < ROUNDS; i++) {
+            int next = left ^ round(right, keys[i]);
+            left = right;
+            right = next;
+        }
+        return ((long) left << halfBits) | right;
+    }
+
+    private long unpermute(long value)
+    {
+        int left = (int) (value >>> halfBits), right = (int) (value & halfMask);
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            int previous = right ^ round(left, keys[i]);
+            right = left;
+            left = previous;
+        }
+        return ((long) left << halfBits) | right;
+    }
+}
@@ -0,0 +1,214 @@
+package amazed.maze;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+/**
+ * <code>FrameRenderer</code> draws the state of a maze &mdash; its
+ * cells, its players and any marked path &mdash; into images, without
+ * a screen. It works in headless mode, and can thus produce visual
+ * output of searches run on servers.
+ * <p>
+ * An image is split into square tiles of cells, which are drawn in
+ * parallel by the common fork/join pool. Method
+ * <code>writeFrames</code> replays a {@link Recording} and writes a
+ * PNG file per frame, encoding a frame while the next one is being
+ * replayed and drawn.
+ */
+
+public class FrameRenderer
+{
+    /**
+     * The default side of a tile drawn by a single task, in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final Maze maze;
+    private final BoardPainter painter;
+    private final int tileSize;
+
+    /**
+     * Creates a renderer of <code>maze</code> with the given size of
+     * cells.
+     *
+     * @param maze       the maze to be drawn
+     * @param cellSize   the side of a cell in pixels, if positive; if
+     *                   negative, every pixel shows a square of
+     *                   <code>-cellSize</code> cells on a side
+     */
+    public FrameRenderer(Maze maze, int cellSize)
+    {
+        this(maze, cellSize, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Creates a renderer of <code>maze</code> with the given size of
+     * cells and tiles.
+     *
+     * @param maze       the maze to be drawn
+     * @param cellSize   the side of a cell in pixels, as in
+     *                   {@link #FrameRenderer(Maze, int)}
+     * @param tileSize   the side in pixels of the tiles drawn in parallel
+     */
+    public FrameRenderer(Maze maze, int cellSize, int tileSize)
+    {
+        if (cellSize == 0 || tileSize <= 0)
+            throw new IllegalArgumentException("Cell and tile sizes must not be zero");
+        this.maze = maze;
+        this.painter = new BoardPainter(maze.getBoard(), cellSize, cellSize < 0 ? -cellSize : 1);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns the size of the images drawn by this renderer.
+     *
+     * @return   the size of the whole maze, in pixels
+     */
+    public Dimension getSize()
+    {
+        return painter.size();
+    }
+
+    /**
+     * Draws the current state of the maze into a new image. The
+     * players are drawn at the positions they had when drawing
+     * started, even if they move meanwhile.
+     *
+     * @return   an image of the whole maze
+     */
+    public BufferedImage render()
+    {
+        Dimension size = painter.size();
+        BufferedImage image = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height),
+                                                BufferedImage.TYPE_INT_RGB);
+        // tiles cover a whole number of units, so that no unit straddles two tiles
+        int step = painter.step();
+        int units = Math.max(1, tileSize / step);
+        int tileRows = (painter.unitRows() + units - 1) / units;
+        int tileCols = (painter.unitCols() + units - 1) / units;
+        PositionSnapshot positions = new PositionSnapshot();
+        maze.getBoard().snapshotPlayers(positions);
+        IntStream.range(0, tileRows * tileCols).parallel().forEach(tile -> {
+            int firstRow = tile / tileCols * units, firstCol = tile % tileCols * units;
+            // tiles are disjoint and the units cover the image: no clip, no background
+            Graphics2D g = image.createGraphics();
+            try {
+                painter.drawUnits(g, positions, firstRow, firstCol,
+                                  firstRow + units - 1, firstCol + units - 1, 0, 0);
+            } finally {
+                g.dispose();
+            }
+        });
+        return image;
+    }
+
+    /**
+     * Draws the current state of the maze into a PNG file.
+     *
+     * @param file   the file to be written
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file)
+    throws IOException
+    {
+        ImageIO.write(render(), "png", file);
+    }
+
+    /**
+     * Replays a recording of a search on the maze, and writes
+     * <code>nFrames</code> PNG files showing it at evenly spaced
+     * times, from the first event to the last one. If
+     * <code>solution</code> is not <code>null</code>, an extra frame
+     * shows it marked on the maze without players. Files are named
+     * <code>frame00000.png</code>, <code>frame00001.png</code> and
+     * so on. The maze must be the one the recording was made on; its
+     * players are removed before the replay.
+     *
+     * @param recording   the recording to be replayed
+     * @param solution    a path to be marked in the last frame, or <code>null</code>
+     * @param directory   the directory where the files are written
+     * @param nFrames     the number of frames of the replay, at least 1
+     * @return            the number of files written
+     * @throws IOException if a file cannot be written
+     */
+    public int writeFrames(Recording recording, List<Integer> solution, File directory, int nFrames)
+    throws IOException
+    {
+        if (nFrames < 1)
+            throw new IllegalArgumentException("At least one frame is needed");
+        Board board = maze.getBoard();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService encoders = Executors.newFixedThreadPool(threads);
+        // frames being encoded; at most one per encoder, to bound memory
+        Queue<Future<?>> pending = new ArrayDeque<>();
+        int written = 0;
+        try {
+            board.deregisterAll();
+            int replayed = 0;
+            for (int frame = 0; frame < nFrames; frame++) {
+                long time = nFrames == 1 ? recording.duration()
+                                         : recording.duration() * frame / (nFrames - 1);
+                int target = recording.eventsUntil(time);
+                recording.replay(board, replayed, target);
+                replayed = target;
+                if (pending.size() == threads)
+                    await(pending.remove());
+                pending.add(encode(encoders, render(), new File(directory, frameName(written++))));
+            }
+            if (solution != null) {
+                board.deregisterAll();
+                board.markPath(solution);
+                pending.add(encode(encoders, render(), new File(directory, frameName(written++))));
+            }
+            while (!pending.isEmpty())
+                await(pending.remove());
+        } finally {
+            encoders.shutdownNow();
+        }
+        return written;
+    }
+
+    private static String frameName(int frame)
+    {
+        return String.format("frame%05d.png", frame);
+    }
+
+    private static Future<?> encode(ExecutorService encoders, BufferedImage image, File file)
+    {
+        return encoders.submit(() -> {
+            try {
+                ImageIO.write(image, "png", file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void await(Future<?> future)
+    throws IOException
+    {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing frames", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+}
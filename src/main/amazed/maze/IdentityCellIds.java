@@ -0,0 +1,35 @@
+package amazed.maze;
+
+// cell ids equal to cell indexes
+final class IdentityCellIds
+    implements CellIds
+{
+    private final int cells;
+
+    IdentityCellIds(int cells)
+    {
+        if (cells < 1)
+            throw new IllegalArgumentException("Cannot number " + cells + " cells");
+        this.cells = cells;
+    }
+
+    @Override
+    public int cells()
+    {
+        return cells;
+    }
+
+    @Override
+    public int id(int index)
+    {
+        if (index < 0 || index >= cells)
+            throw new IndexOutOfBoundsException("No cell " + index);
+        return index;
+    }
+
+    @Override
+    public int index(int id)
+    {
+        return id >= 0 && id < cells ? id : -1;
+    }
+}
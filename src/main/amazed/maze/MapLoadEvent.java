@@ -0,0 +1,62 @@
+package amazed.maze;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <code>MapLoadEvent</code> is a Java Flight Recorder event timing a
+ * phase of loading a maze: reading its map into a board, or building
+ * the data structures a solver derives from the map. The creator of
+ * the event calls <code>begin</code> when the phase starts, and
+ * <code>loaded</code> when it ends.
+ */
+
+@Name("amazed.MapLoad")
+@Label("Map Load")
+@Category({ "Amazed", "Maze" })
+@Description("A phase of loading a maze")
+public final class MapLoadEvent extends Event
+{
+    @Label("Maze")
+    private String maze;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Rows")
+    private int rows;
+
+    @Label("Columns")
+    private int cols;
+
+    /**
+     * Creates an event for a load phase of a maze.
+     *
+     * @param maze    the name of the maze
+     * @param phase   the name of the phase
+     */
+    public MapLoadEvent(String maze, String phase)
+    {
+        this.maze = maze;
+        this.phase = phase;
+    }
+
+    /**
+     * Ends the phase, and commits the event if it is recorded.
+     *
+     * @param rows   the number of rows of the maze loaded
+     * @param cols   the number of columns of the maze loaded
+     */
+    public void loaded(int rows, int cols)
+    {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.cols = cols;
+            commit();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package amazed.maze;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.HashSet;
@@ -16,8 +19,13 @@ import java.util.Set;
  * be explored incrementally.  Every node in the graph represents a
  * <em>cell</em>, which can be thought as a room in the maze.  Every
  * node has an identifier &mdash; an integer whose value is unique
- * within the maze.  Node identifiers are generated randomly at every
- * object creation, and thus they are not persistent or deterministic.
+ * within the maze.  Node identifiers are scattered over the cells by a
+ * keyed permutation (see {@link CellIds}), so that they don't follow
+ * the layout of the maze.  By default its key is random, and kept in
+ * the snapshot of the map's board, so that the identifiers of a map
+ * change only when the map does; system property
+ * <code>amazed.cellids</code> chooses a fixed key, or identifiers
+ * equal to the cells' indexes.
  * <p>
  * Exploration of a maze begins at the start node, whose identifier
  * is returned by method <code>start</code>.  Given the identifier
@@ -27,7 +35,8 @@ import java.util.Set;
  * <p>
  * Finally, methods <code>spawn</code> and <code>move</code> animate
  * icons of players that move around the maze in its graphical
- * representation.
+ * representation. Alternatively, the moves can be recorded in a
+ * {@link MoveJournal} at full speed, and replayed afterwards.
  *
  * @author  Carlo A. Furia
  */
@@ -35,6 +44,8 @@ import java.util.Set;
 public class Maze
 {
     private Board board;
+    // name of the map file, without directories
+    private final String name;
 
     Board getBoard()
     {
@@ -43,22 +54,83 @@ public class Maze
 
     private int delay = 500;
     private boolean animate = true;
+    // if not null, players' moves are recorded here instead of animated
+    private MoveJournal journal;
 
 
     /**
-     * Creates a maze by reading a map from file.
+     * Creates a maze by reading a map from file, or from the snapshot
+     * of the board saved the last time the same map was read.
      *
      * @param filename   the name of the text file containing the map
      */
     Maze(String filename)
     {
-        board = new Board(filename);
+        name = new File(filename).getName();
+        MapLoadEvent event = new MapLoadEvent(name, "board");
+        event.begin();
+        board = BoardSnapshot.load(filename);
+        event.loaded(board.getRows(), board.getCols());
+    }
+
+    /**
+     * Reads a maze from a map file, without graphical display or
+     * animation: players' moves are ignored. This is the maze
+     * that benchmarks and tools should search.
+     *
+     * @param filename   the name of the text file containing the map
+     * @return           the maze described by the map
+     */
+    public static Maze load(String filename)
+    {
+        Maze maze = new Maze(filename);
+        maze.setAnimate(false);
+        return maze;
+    }
+
+    /**
+     * Reads a maze from the text of a map, without graphical display
+     * or animation, like <code>load</code>. Unlike <code>load</code>,
+     * it reports a text that is not a complete map with an exception.
+     *
+     * @param reader   the reader of the map's text, which is not closed
+     * @param name     the name of the maze
+     * @return         the maze described by the map
+     * @throws IOException if the text cannot be read or is not a complete map
+     */
+    public static Maze parse(Reader reader, String name)
+    throws IOException
+    {
+        MapLoadEvent event = new MapLoadEvent(name, "board");
+        event.begin();
+        Board board = new Board(reader);
+        event.loaded(board.getRows(), board.getCols());
+        Maze maze = new Maze(board, name);
+        maze.setAnimate(false);
+        return maze;
     }
 
     // initialize Maze wrapping given board
     Maze(Board board)
+    {
+        this(board, "board");
+    }
+
+    private Maze(Board board, String name)
     {
         this.board = board;
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the maze, which is the name of its map
+     * file without directories.
+     *
+     * @return   the name of the maze
+     */
+    public String getName()
+    {
+        return name;
     }
 
     void setDelay(int delay)
@@ -73,6 +145,25 @@ public class Maze
         this.animate = animate;
     }
 
+    // record players' moves in journal, without animating or delaying them
+    void setJournal(MoveJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns a hash of the current contents of the maze: its size
+     * and the tile of every cell, including the marks of marked
+     * paths. Mazes with the same contents have the same hash, whatever
+     * their node identifiers, and a change to any cell changes it.
+     *
+     * @return   the hexadecimal SHA-256 hash of the maze's contents
+     */
+    public String contentHash()
+    {
+        return board.contentHash();
+    }
+
     /**
      * Returns the unique identifier of the start node, corresponding
      * to the top-left cell in the maze.
@@ -118,6 +209,94 @@ public class Maze
         return board.getCell(id).isHeart();
     }
 
+    /**
+     * Returns the number of rows of the grid underlying the maze.
+     * Together with <code>cols</code>, <code>isAccessible</code>,
+     * <code>cellId</code>, <code>rowOf</code> and <code>colOf</code>
+     * this gives grid-based solvers direct access to the layout of
+     * the maze, without going through <code>neighbors</code>.
+     *
+     * @return   the number of rows of the maze
+     */
+    public int rows()
+    {
+        return board.getRows();
+    }
+
+    /**
+     * Returns the number of columns of the grid underlying the maze.
+     *
+     * @return   the number of columns of the maze
+     */
+    public int cols()
+    {
+        return board.getCols();
+    }
+
+    /**
+     * Tests whether the cell at a given grid position can be
+     * entered. Positions outside the grid are not accessible.
+     *
+     * @param row   the row of the cell
+     * @param col   the column of the cell
+     * @return      <code>true</code> if the cell at <code>row</code>,
+     *              <code>col</code> is on the grid and accessible;
+     *              <code>false</code> otherwise
+     */
+    public boolean isAccessible(int row, int col)
+    {
+        return board.isAccessible(row, col);
+    }
+
+    /**
+     * Tests whether the cell at a given grid position contains a
+     * goal.
+     *
+     * @param row   the row of the cell
+     * @param col   the column of the cell
+     * @return      <code>true</code> if the cell at <code>row</code>,
+     *              <code>col</code> is on the grid and is a goal;
+     *              <code>false</code> otherwise
+     */
+    public boolean hasGoal(int row, int col)
+    {
+        return board.isOnBoard(row, col) && board.getCell(row, col).isHeart();
+    }
+
+    /**
+     * Returns the identifier of the node at a given grid position.
+     *
+     * @param row   the row of the cell, between 0 and <code>rows() - 1</code>
+     * @param col   the column of the cell, between 0 and <code>cols() - 1</code>
+     * @return      the identifier of the node at <code>row</code>, <code>col</code>
+     */
+    public int cellId(int row, int col)
+    {
+        return board.getCell(row, col).getId();
+    }
+
+    /**
+     * Returns the grid row of a node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the row of the cell with identifier <code>id</code>
+     */
+    public int rowOf(int id)
+    {
+        return board.getPosition(id).getRow();
+    }
+
+    /**
+     * Returns the grid column of a node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the column of the cell with identifier <code>id</code>
+     */
+    public int colOf(int id)
+    {
+        return board.getPosition(id).getCol();
+    }
+
     /**
      * Tests whether a sequence of node identifiers corresponds to a
      * connected path from the start node to a goal.
@@ -128,7 +307,7 @@ public class Maze
      *               nodes, and ends with a goal node;
      *               <code>false</code> otherwise
      */
-    boolean isValidPath(List<Integer> path)
+    public boolean isValidPath(List<Integer> path)
     {
         if (path.isEmpty())
             return false;
@@ -149,15 +328,38 @@ public class Maze
      * Creates a new animated player, and place it on a given node.
      *
      * @param id   the identifier of a node in the maze where the new player is placed
-     * @return     a unique identifier of the newly created player
+     * @return     an identifier of the newly created player, unique
+     *             among the players currently in the maze
      */
     public int newPlayer(int id)
     {
+        if (journal != null)
+            return journal.spawn(id);
         if (!animate)
             return 0;
         return board.newPlayer(id);
     }
 
+    /**
+     * Removes a player from the maze, for example when the task that
+     * created it has finished. The identifier of a removed player
+     * may be reused by a later new player, so it must not be used
+     * any more. This method doesn't do anything if the player
+     * doesn't exist.
+     *
+     * @param playerId   the identifier of an existing player
+     */
+    public void removePlayer(int playerId)
+    {
+        if (journal != null) {
+            journal.remove(playerId);
+            return;
+        }
+        if (!animate)
+            return;
+        board.removePlayer(playerId);
+    }
+
     /**
      * Removes all players from the maze. If multiple threads are
      * active on the maze, it is advisable to stop all threads before
@@ -182,16 +384,18 @@ public class Maze
      */
     public void move(int playerId, int id)
     {
+        if (journal != null) {
+            journal.move(playerId, id);
+            return;
+        }
         if (!animate)
             return;
-        Player player = board.getPlayer(playerId);
         try {
             Thread.sleep(delay);
         } catch (InterruptedException e) {
             System.out.println("Interrupted!");
         }
-        if (player != null)
-            player.move(id);
+        board.movePlayer(playerId, id);
     }
 
     /**
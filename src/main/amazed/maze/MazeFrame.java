@@ -2,119 +2,106 @@ package amazed.maze;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
-import java.awt.GridLayout;
-import java.awt.Font;
-import java.awt.Graphics;
-import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import javax.swing.ImageIcon;
-import javax.swing.OverlayLayout;
+import java.util.List;
+import javax.swing.JComboBox;
+import javax.swing.JSlider;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JViewport;
 import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.Timer;
 
 
-class CellButton extends JPanel {
-
-    private Cell cell;
-
-    private Color visibleTextColor(Player player)
-    {
-        switch (player.getId()) {
-        case 1:
-            return Color.WHITE;
-        case 2:
-            return Color.RED;
-        case 3:
-        case 4:
-            return Color.BLACK;
-        default:
-            return Color.RED;
-        }
-    }
-
-    CellButton(Cell cell)
-    {
-        // super(new ImageIcon(cell.getImage()));
-        this.cell = cell;
-        setLayout(new OverlayLayout(this));
-        setOpaque(false);
-
-        JButton image = new JButton(new ImageIcon(cell.getImage()));
-        image.setAlignmentX(JButton.CENTER_ALIGNMENT);
-        image.setAlignmentY(JButton.CENTER_ALIGNMENT);
-
-        Player[] players = cell.getPlayers();
-        if (players.length > 1) {
-            JButton text = new JButton();
-            text.setText(Integer.toString(players.length));
-            text.setMaximumSize(new Dimension(50,50));
-            text.setAlignmentX(JButton.RIGHT_ALIGNMENT);
-            text.setAlignmentY(JButton.BOTTOM_ALIGNMENT);
-            text.setFont(new Font(null, Font.BOLD, 16));
-            text.setForeground(visibleTextColor(players[0]));
-            text.setBorder(null);
-            text.setOpaque(false);
-            text.setContentAreaFilled(false);
-            text.setBorderPainted(false);
-            add(text);
-        }
-        add(image);
-    }
-
-    @Override
-    public boolean isOptimizedDrawingEnabled()
-    {
-        return false;
-    }
-
-    // preferred size of button, equal to image size
-    @Override
-    public Dimension getPreferredSize()
-    {
-        return new Dimension(cell.getWidth(), cell.getHeight());
-    }
-
-}
-
-
 class MazeFrame
     extends JFrame
     implements ActionListener
 {
 
-    private JPanel panel;
+    private BoardCanvas canvas;
     private Board board;
+    // players' positions, reused at every refresh
+    private final PositionSnapshot snapshot = new PositionSnapshot();
+    private JLabel status;
 
     private Timer timer;
     private final int REFRESH_INTERVAL = 25;
 
+    // replay of a recorded search; null when showing a live search
+    private Recording recording;
+    private List<Integer> solution;
+    private boolean solutionMarked = false;
+    // number of events of the recording applied to the board
+    private int replayed = 0;
+    // replay time since the first event, in nanoseconds
+    private double clock = 0;
+    private double speed = 0.001;
+    private boolean playing = true;
+    private JSlider scrubber;
+    private JButton playButton;
+
+    // recorded time elapsed for every real second, and its label
+    private static final double[] SPEEDS = { 1, 0.1, 0.01, 0.001, 0.0001 };
+    private static final String[] SPEED_NAMES = { "1x", "1/10x", "1/100x", "1/1000x", "1/10000x" };
+
     MazeFrame(Maze maze)
     {
         this.board = maze.getBoard();
         initBoard();
     }
 
+    // frame replaying recording on maze, then showing solution (if not null)
+    MazeFrame(Maze maze, Recording recording, List<Integer> solution)
+    {
+        this.board = maze.getBoard();
+        this.recording = recording;
+        this.solution = solution;
+        initBoard();
+        initReplayControls();
+    }
+
     private void initBoard()
     {
-        panel = new JPanel();
-        panel.setLayout(new GridLayout(board.getRows(), board.getCols(), 0, 0));
-        panel.setDoubleBuffered(true);
+        canvas = new BoardCanvas(board);
 
         // the following statements set up a <em>scollable</em> frame
         // to use a non-scrollable, replace all the following statements with:
-        // add(panel, BorderLayout.CENTER);
-        JScrollPane scrollFrame = new JScrollPane(panel);
+        // add(canvas, BorderLayout.CENTER);
+        JScrollPane scrollFrame = new JScrollPane(canvas);
         Dimension screen = java.awt.Toolkit.getDefaultToolkit().getScreenSize();
-        int scrWidth = Math.min(board.getWidth(), (int) screen.getWidth()) + 30;
-        int scrHeight = Math.min(board.getHeight(), (int) screen.getHeight()) + 50;
+        // start zoomed out enough for large boards to be seen whole, at
+        // most a few screens wide
+        canvas.zoomToFit(4 * (int) screen.getWidth(), 4 * (int) screen.getHeight());
+        Dimension size = canvas.getPreferredSize();
+        int scrWidth = Math.min(size.width, (int) screen.getWidth()) + 30;
+        int scrHeight = Math.min(size.height, (int) screen.getHeight()) + 50;
         scrollFrame.setPreferredSize(new Dimension(scrWidth, scrHeight));
         add(scrollFrame);
 
+        JComboBox<String> zooms = new JComboBox<>(BoardCanvas.ZOOM_NAMES);
+        zooms.setSelectedIndex(canvas.getZoom());
+        zooms.addActionListener(e -> zoom(scrollFrame, zooms.getSelectedIndex()));
+        // control + mouse wheel also zooms
+        scrollFrame.addMouseWheelListener(e -> {
+            if (e.isControlDown())
+                zooms.setSelectedIndex(Math.max(0, Math.min(BoardCanvas.ZOOMS.length - 1,
+                                                            canvas.getZoom() + e.getWheelRotation())));
+        });
+        scrollFrame.setWheelScrollingEnabled(true);
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolbar.add(new JLabel("Zoom"));
+        toolbar.add(zooms);
+        status = new JLabel();
+        toolbar.add(status);
+        add(toolbar, BorderLayout.NORTH);
+
         pack();
         setTitle("A-mazed");
         setResizable(true);
@@ -125,23 +112,103 @@ class MazeFrame
         timer.start();
     }
 
-    private void displayBoard()
+    // change zoom level, keeping the center of the view in place
+    private void zoom(JScrollPane scrollFrame, int level)
+    {
+        JViewport viewport = scrollFrame.getViewport();
+        Rectangle view = viewport.getViewRect();
+        Dimension before = canvas.getPreferredSize();
+        double centerX = (view.getCenterX()) / Math.max(1, before.width);
+        double centerY = (view.getCenterY()) / Math.max(1, before.height);
+        canvas.setZoom(level);
+        Dimension after = canvas.getPreferredSize();
+        viewport.setViewSize(after);
+        int x = (int) (centerX * after.width - view.width / 2.0);
+        int y = (int) (centerY * after.height - view.height / 2.0);
+        viewport.setViewPosition(new Point(Math.max(0, Math.min(x, after.width - view.width)),
+                                           Math.max(0, Math.min(y, after.height - view.height))));
+    }
+
+    private void initReplayControls()
     {
-        panel.removeAll();
-        Board b = board.consistentBoard();
-        for (int row = 0; row < b.getRows(); row++) {
-            for (int col = 0; col < b.getCols(); col++) {
-                panel.add(new CellButton(b.getCell(row, col)));
+        JPanel controls = new JPanel();
+        playButton = new JButton("Pause");
+        playButton.addActionListener(e -> {
+            playing = !playing;
+            playButton.setText(playing ? "Pause" : "Play");
+        });
+        controls.add(playButton);
+
+        scrubber = new JSlider(0, recording.size(), 0);
+        scrubber.addChangeListener(e -> {
+            // only react to the user dragging the slider
+            if (scrubber.getValueIsAdjusting()) {
+                seek(scrubber.getValue());
+                clock = replayed == 0 ? 0 : recording.time(replayed - 1) - recording.time(0);
             }
+        });
+        controls.add(scrubber);
+
+        JComboBox<String> speeds = new JComboBox<>(SPEED_NAMES);
+        speeds.setSelectedIndex(3);
+        speeds.addActionListener(e -> speed = SPEEDS[speeds.getSelectedIndex()]);
+        controls.add(speeds);
+
+        add(controls, BorderLayout.SOUTH);
+        pack();
+    }
+
+    // advance the replay by one refresh interval
+    private void replayStep()
+    {
+        if (!playing)
+            return;
+        clock += REFRESH_INTERVAL * 1e6 * speed;
+        seek(recording.eventsUntil((long) clock));
+        scrubber.setValue(replayed);
+        if (replayed == recording.size()) {
+            playing = false;
+            playButton.setText("Play");
+        }
+    }
+
+    // bring the board to the state after the first target events
+    private void seek(int target)
+    {
+        if (solutionMarked) {
+            board.unmarkPath(solution);
+            solutionMarked = false;
         }
+        if (target < replayed) {
+            board.deregisterAll();
+            replayed = 0;
+        }
+        recording.replay(board, replayed, target);
+        replayed = target;
+        if (replayed == recording.size() && solution != null) {
+            board.deregisterAll();
+            board.markPath(solution);
+            solutionMarked = true;
+        }
+    }
+
+    // redraw only the cells changed since the last refresh
+    private void displayBoard()
+    {
+        canvas.refresh();
+        board.snapshotPlayers(snapshot);
+        String text = "Players: " + snapshot.countPlayers();
+        if (recording != null && recording.lostEvents() > 0)
+            text += " (" + recording.lostEvents() + " events lost)";
+        status.setText(text);
         Toolkit.getDefaultToolkit().sync();
-        panel.revalidate();
-        panel.repaint();
     }
 
     @Override
     public void actionPerformed(ActionEvent e)
     {
+        if (recording != null)
+            replayStep();
         displayBoard();
     }
 }
@@ -0,0 +1,147 @@
+package amazed.maze;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <code>MazeGenerator</code> writes map files of random mazes of any
+ * size, for benchmarks and tests that need larger or more varied
+ * mazes than the ones shipped with the application.
+ * <p>
+ * A generated maze is a perfect maze &mdash; with exactly one path
+ * between any two cells &mdash; carved by a randomized depth-first
+ * search from the start cell, the top-left one. Cells with even row
+ * and column are rooms; the others are walls, except those carved to
+ * connect rooms. A <em>braid</em> factor then removes a share of the
+ * remaining walls between rooms, adding loops. The goal is in the
+ * room farthest from the start along the grid. The same seed always
+ * generates the same maze.
+ */
+
+public class MazeGenerator
+{
+    private static final char EMPTY = '.';
+    private static final char WALL = '*';
+    private static final char GOAL = 'v';
+
+    private final long seed;
+
+    /**
+     * Creates a generator of mazes determined by <code>seed</code>.
+     *
+     * @param seed   the seed of the random choices
+     */
+    public MazeGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates the map of a maze.
+     *
+     * @param rows    the number of rows of the maze, at least 1
+     * @param cols    the number of columns of the maze, at least 1
+     * @param braid   the share, between 0 and 1, of walls between
+     *                rooms that are removed after carving
+     * @return        the text of the map, in the format read by {@link Maze}
+     */
+    public String generate(int rows, int cols, double braid)
+    {
+        StringBuilder text = new StringBuilder(32 + rows * (2 * cols + 1));
+        try {
+            write(text, rows, cols, braid);
+        } catch (IOException e) {
+            // appending to a StringBuilder doesn't fail
+            throw new AssertionError(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a maze and writes its map to a file.
+     *
+     * @param file    the map file to be written
+     * @param rows    the number of rows of the maze, at least 1
+     * @param cols    the number of columns of the maze, at least 1
+     * @param braid   the share of walls between rooms removed, as in
+     *                {@link #generate(int, int, double)}
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file, int rows, int cols, double braid)
+    throws IOException
+    {
+        try (Writer writer = new FileWriter(file)) {
+            write(writer, rows, cols, braid);
+        }
+    }
+
+    private void write(Appendable out, int rows, int cols, double braid)
+    throws IOException
+    {
+        if (rows < 1 || cols < 1)
+            throw new IllegalArgumentException("A maze needs at least one row and one column");
+        char[][] grid = carve(rows, cols, braid);
+        out.append("$ ").append(Integer.toString(rows)).append(" , ")
+           .append(Integer.toString(cols)).append('\n');
+        for (char[] line: grid) {
+            for (char ch: line)
+                out.append(' ').append(ch);
+            out.append('\n');
+        }
+    }
+
+    private char[][] carve(int rows, int cols, double braid)
+    {
+        Random random = new Random(seed);
+        char[][] grid = new char[rows][cols];
+        for (char[] line: grid)
+            Arrays.fill(line, WALL);
+        // rooms are the cells with even coordinates
+        int roomRows = (rows + 1) / 2, roomCols = (cols + 1) / 2;
+        boolean[] carved = new boolean[roomRows * roomCols];
+        // explicit stack of rooms, so that large mazes don't overflow the call stack
+        int[] stack = new int[roomRows * roomCols];
+        int top = 0;
+        stack[top++] = 0;
+        carved[0] = true;
+        grid[0][0] = EMPTY;
+        int[] candidates = new int[4];
+        while (top > 0) {
+            int room = stack[top - 1];
+            int r = room / roomCols, c = room % roomCols;
+            int n = 0;
+            if (r > 0 && !carved[room - roomCols])
+                candidates[n++] = room - roomCols;
+            if (r + 1 < roomRows && !carved[room + roomCols])
+                candidates[n++] = room + roomCols;
+            if (c > 0 && !carved[room - 1])
+                candidates[n++] = room - 1;
+            if (c + 1 < roomCols && !carved[room + 1])
+                candidates[n++] = room + 1;
+            if (n == 0) {
+                top -= 1;
+                continue;
+            }
+            int next = candidates[random.nextInt(n)];
+            int nr = next / roomCols, nc = next % roomCols;
+            grid[r + nr][c + nc] = EMPTY;
+            grid[2 * nr][2 * nc] = EMPTY;
+            carved[next] = true;
+            stack[top++] = next;
+        }
+        // walls between two rooms: one of the coordinates odd, the other even
+        for (int row = 0; row < rows; row++) {
+            for (int col = (row + 1) % 2; col < cols; col += 2) {
+                boolean between = row % 2 == 0 ? col + 1 < cols : row + 1 < rows;
+                if (between && grid[row][col] == WALL && random.nextDouble() < braid)
+                    grid[row][col] = EMPTY;
+            }
+        }
+        grid[2 * (roomRows - 1)][2 * (roomCols - 1)] = GOAL;
+        return grid;
+    }
+}
@@ -0,0 +1,211 @@
+package amazed.maze;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>MoveJournal</code> records the players' moves of a search,
+ * so that they can be replayed after the search has finished.
+ * <p>
+ * Every thread appends to its own ring buffer of fixed capacity,
+ * allocated the first time the thread records a move; appending is
+ * then allocation-free and doesn't synchronize with other threads.
+ * An event is a timestamp and a single <code>long</code> packing the
+ * kind of event, the player identifier and the node identifier. If a
+ * thread records more events than the capacity of its buffer, its
+ * oldest events are overwritten.
+ * <p>
+ * Method <code>recording</code> merges all buffers into a
+ * {@link Recording} ordered by time.
+ */
+
+public class MoveJournal
+{
+    /**
+     * The default capacity of the buffer of each thread, in events.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    static final int SPAWN = 1;
+    static final int MOVE = 2;
+    static final int REMOVE = 3;
+
+    private final int capacity;
+    private final long origin = System.nanoTime();
+    private final AtomicInteger nPlayers = new AtomicInteger();
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> ring = ThreadLocal.withInitial(this::newRing);
+
+    /**
+     * Creates a journal with buffers of default capacity.
+     */
+    public MoveJournal()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a journal whose per-thread buffers hold
+     * <code>capacity</code> events.
+     *
+     * @param capacity   the number of events kept per thread
+     */
+    public MoveJournal(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    // record a new player on node id, returning its identifier
+    int spawn(int id)
+    {
+        int playerId = nPlayers.getAndIncrement();
+        ring.get().append(System.nanoTime() - origin, pack(SPAWN, playerId, id));
+        return playerId;
+    }
+
+    // record a move of player playerId to node id
+    void move(int playerId, int id)
+    {
+        ring.get().append(System.nanoTime() - origin, pack(MOVE, playerId, id));
+    }
+
+    // record the removal of player playerId
+    void remove(int playerId)
+    {
+        ring.get().append(System.nanoTime() - origin, pack(REMOVE, playerId, 0));
+    }
+
+    /**
+     * Returns the number of events overwritten because a thread's
+     * buffer was full.
+     *
+     * @return   the number of lost events
+     */
+    public long lostEvents()
+    {
+        long lost = 0;
+        for (Ring r: rings)
+            lost += Math.max(0, r.written() - capacity);
+        return lost;
+    }
+
+    /**
+     * Merges the events recorded so far by all threads. It should be
+     * called once the search has finished.
+     *
+     * @return   the events recorded so far, ordered by time
+     */
+    public Recording recording()
+    {
+        int total = 0;
+        long[] written = new long[rings.size()];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = rings.get(i).written();
+            total += (int) Math.min(written[i], capacity);
+        }
+        long[] times = new long[total];
+        long[] events = new long[total];
+        // k-way merge of the rings, each already ordered by time
+        long[] next = new long[written.length];
+        long lost = 0;
+        for (int i = 0; i < next.length; i++) {
+            next[i] = Math.max(0, written[i] - capacity);
+            lost += next[i];
+        }
+        for (int n = 0; n < total; n++) {
+            int best = -1;
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] < written[i]
+                    && (best < 0 || rings.get(i).time(next[i]) < rings.get(best).time(next[best])))
+                    best = i;
+            }
+            times[n] = rings.get(best).time(next[best]);
+            events[n] = rings.get(best).event(next[best]);
+            next[best] += 1;
+        }
+        return new Recording(times, events, lost);
+    }
+
+    private Ring newRing()
+    {
+        Ring r = new Ring(capacity);
+        rings.add(r);
+        return r;
+    }
+
+    private static long pack(int kind, int playerId, int id)
+    {
+        return ((long) kind << 62) | ((long) (playerId & 0x3fffffff) << 32) | (id & 0xffffffffL);
+    }
+
+    static int kind(long event)
+    {
+        return (int) (event >>> 62);
+    }
+
+    static int playerId(long event)
+    {
+        return (int) (event >>> 32) & 0x3fffffff;
+    }
+
+    static int nodeId(long event)
+    {
+        return (int) event;
+    }
+
+    // single-writer ring of events
+    private static class Ring
+    {
+        private static final VarHandle WRITTEN;
+
+        static {
+            try {
+                WRITTEN = MethodHandles.lookup().findVarHandle(Ring.class, "written", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final long[] times;
+        private final long[] events;
+        private final int capacity;
+        // number of events ever appended; published with release semantics
+        private long written;
+
+        Ring(int capacity)
+        {
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.events = new long[capacity];
+        }
+
+        void append(long time, long event)
+        {
+            long n = written;
+            int slot = (int) (n % capacity);
+            times[slot] = time;
+            events[slot] = event;
+            WRITTEN.setRelease(this, n + 1);
+        }
+
+        long written()
+        {
+            return (long) WRITTEN.getAcquire(this);
+        }
+
+        long time(long n)
+        {
+            return times[(int) (n % capacity)];
+        }
+
+        long event(long n)
+        {
+            return events[(int) (n % capacity)];
+        }
+    }
+}
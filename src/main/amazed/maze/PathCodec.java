@@ -0,0 +1,135 @@
+package amazed.maze;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>PathCodec</code> converts paths between node identifiers,
+ * which are only meaningful within one loaded <code>Maze</code>,
+ * and representations that clients of any other load of the same map
+ * understand.
+ * <p>
+ * The compact encoding of a path is the row and column of its first
+ * node, a colon, and then one letter per step: <code>N</code>,
+ * <code>S</code>, <code>W</code> or <code>E</code>, for the direction
+ * of the next node. For example, <code>0,0:EES</code> goes right
+ * twice, then down, from the top-left cell. The empty path is encoded
+ * as the empty string.
+ */
+
+public class PathCodec
+{
+    private PathCodec()
+    {
+    }
+
+    /**
+     * Encodes a connected path compactly.
+     *
+     * @param maze   the maze of the path
+     * @param path   a list of adjacent node identifiers in the maze
+     * @return       the compact encoding of <code>path</code>
+     * @throws IllegalArgumentException if two consecutive nodes of
+     *         <code>path</code> are not adjacent
+     */
+    public static String encode(Maze maze, List<Integer> path)
+    {
+        if (path.isEmpty())
+            return "";
+        int row = maze.rowOf(path.get(0)), col = maze.colOf(path.get(0));
+        StringBuilder code = new StringBuilder(path.size() + 12);
+        code.append(row).append(',').append(col).append(':');
+        for (int i = 1; i < path.size(); i++) {
+            int nextRow = maze.rowOf(path.get(i)), nextCol = maze.colOf(path.get(i));
+            code.append(letter(nextRow - row, nextCol - col));
+            row = nextRow;
+            col = nextCol;
+        }
+        return code.toString();
+    }
+
+    /**
+     * Decodes a compactly encoded path into node identifiers of a
+     * maze.
+     *
+     * @param maze   the maze of the path
+     * @param code   a compact encoding, as returned by <code>encode</code>
+     * @return       the list of node identifiers of the path in <code>maze</code>
+     * @throws IllegalArgumentException if <code>code</code> is not a
+     *         valid encoding, or leaves the maze
+     */
+    public static List<Integer> decode(Maze maze, String code)
+    {
+        List<Integer> path = new ArrayList<>();
+        if (code.isEmpty())
+            return path;
+        int colon = code.indexOf(':'), comma = code.indexOf(',');
+        if (colon < 0 || comma < 0 || comma > colon)
+            throw new IllegalArgumentException("Invalid path " + code);
+        int row, col;
+        try {
+            row = Integer.parseInt(code.substring(0, comma));
+            col = Integer.parseInt(code.substring(comma + 1, colon));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid path " + code, e);
+        }
+        path.add(cellId(maze, row, col));
+        for (int i = colon + 1; i < code.length(); i++) {
+            switch (code.charAt(i)) {
+            case 'N':
+                row -= 1;
+                break;
+            case 'S':
+                row += 1;
+                break;
+            case 'W':
+                col -= 1;
+                break;
+            case 'E':
+                col += 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid step " + code.charAt(i) + " in path " + code);
+            }
+            path.add(cellId(maze, row, col));
+        }
+        return path;
+    }
+
+    /**
+     * Returns the positions of the nodes of a path.
+     *
+     * @param maze   the maze of the path
+     * @param path   a list of node identifiers in the maze
+     * @return       for each node, its row and column
+     */
+    public static int[][] positions(Maze maze, List<Integer> path)
+    {
+        int[][] positions = new int[path.size()][];
+        for (int i = 0; i < positions.length; i++) {
+            int id = path.get(i);
+            positions[i] = new int[] { maze.rowOf(id), maze.colOf(id) };
+        }
+        return positions;
+    }
+
+    private static char letter(int dRow, int dCol)
+    {
+        if (dRow == -1 && dCol == 0)
+            return 'N';
+        if (dRow == 1 && dCol == 0)
+            return 'S';
+        if (dRow == 0 && dCol == -1)
+            return 'W';
+        if (dRow == 0 && dCol == 1)
+            return 'E';
+        throw new IllegalArgumentException("Nodes of the path are not adjacent");
+    }
+
+    private static int cellId(Maze maze, int row, int col)
+    {
+        if (row < 0 || row >= maze.rows() || col < 0 || col >= maze.cols())
+            throw new IllegalArgumentException("Path leaves the maze at row " + row + " column " + col);
+        return maze.cellId(row, col);
+    }
+}
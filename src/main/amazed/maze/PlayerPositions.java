@@ -0,0 +1,97 @@
+package amazed.maze;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// positions of the players on a board, indexed by player id, as cell
+// indexes row * cols + col (ABSENT for players not on the board).
+//
+// movers never block: a move is bracketed by two updates of a
+// sequence, one before writing the player's cell and one after. Since
+// players move from several threads at once, the sequence keeps the
+// number of writes in progress in its low half, and the number of
+// writes completed in its high half, rather than a single odd/even
+// count. Readers copy the positions into a PositionSnapshot, and retry
+// while a write is in progress or the sequence changed meanwhile; a
+// copy that passes is exactly the state between two writes. Under
+// constant moves, a reader settles for a possibly mixed copy after a
+// few attempts. A copy costs time proportional to the number of
+// players
+class PlayerPositions
+{
+    static final int ABSENT = -1;
+
+    // copy attempts before a reader settles for a possibly mixed view
+    private static final int MAX_ATTEMPTS = 8;
+    // updates of the sequence starting and ending a write
+    private static final long WRITE_STARTED = 1;
+    private static final long WRITE_ENDED = (1L << 32) - 1;
+    private static final long IN_PROGRESS = (1L << 32) - 1;
+
+    private volatile AtomicIntegerArray cells = absent(16);
+    private final AtomicLong sequence = new AtomicLong();
+
+    // set the position of player playerId to cell (or ABSENT)
+    void set(int playerId, int cell)
+    {
+        sequence.addAndGet(WRITE_STARTED);
+        try {
+            AtomicIntegerArray current = cells;
+            if (playerId >= current.length())
+                current = grow(playerId + 1);
+            current.set(playerId, cell);
+            // a concurrent grow may have copied the array before our write
+            AtomicIntegerArray latest;
+            while ((latest = cells) != current) {
+                latest.set(playerId, cell);
+                current = latest;
+            }
+        } finally {
+            sequence.addAndGet(WRITE_ENDED);
+        }
+    }
+
+    int get(int playerId)
+    {
+        AtomicIntegerArray current = cells;
+        return playerId < current.length() ? current.get(playerId) : ABSENT;
+    }
+
+    // copy the positions into snapshot, without blocking movers
+    void snapshot(PositionSnapshot snapshot)
+    {
+        for (int attempts = 1; ; attempts++) {
+            long before = sequence.get();
+            AtomicIntegerArray current = cells;
+            int[] copy = snapshot.buffer(current.length());
+            for (int i = 0; i < current.length(); i++)
+                copy[i] = current.get(i);
+            long after = sequence.get();
+            if ((before & IN_PROGRESS) == 0 && after == before || attempts == MAX_ATTEMPTS) {
+                snapshot.publish(current.length());
+                return;
+            }
+        }
+    }
+
+    private synchronized AtomicIntegerArray grow(int minLength)
+    {
+        AtomicIntegerArray current = cells;
+        if (minLength <= current.length())
+            return current;
+        AtomicIntegerArray larger = absent(Math.max(minLength, 2 * current.length()));
+        for (int i = 0; i < current.length(); i++)
+            larger.set(i, current.get(i));
+        cells = larger;
+        return larger;
+    }
+
+    private static AtomicIntegerArray absent(int length)
+    {
+        AtomicIntegerArray array = new AtomicIntegerArray(length);
+        for (int i = 0; i < length; i++)
+            array.set(i, ABSENT);
+        return array;
+    }
+}
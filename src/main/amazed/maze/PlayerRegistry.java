@@ -0,0 +1,131 @@
+package amazed.maze;
+
+import java.awt.Image;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+// the players on a board, without one object per player. A player is
+// a slot index: its position is an int in a PlayerPositions, and the
+// occupancy of every cell is an atomic counter. Slots of removed
+// players are recycled by the next new player, so the footprint is
+// bounded by the number of players alive at the same time rather than
+// by the number ever created.
+//
+// a slot is moved by one thread only (the one owning the player), so
+// moves need no locking; only allocation and release of slots are
+// synchronized
+class PlayerRegistry
+{
+    static final int NONE = -1;
+
+    // player images, shared by all players: player1 to player4
+    private static final int N_IMAGES = 4;
+    private static final Image[] IMAGES = new Image[N_IMAGES];
+
+    static {
+        for (int i = 0; i < N_IMAGES; i++) {
+            Image image = ImageFactory.getImage("player" + (i + 1));
+            IMAGES[i] = image != null ? image : ImageFactory.getImage("player");
+        }
+    }
+
+    private final PlayerPositions positions = new PlayerPositions();
+    // cell index --> number of players in it
+    private final AtomicIntegerArray occupancy;
+    private final DirtyCells dirty;
+
+    // slots ever handed out, and stack of the free ones among them
+    private int nSlots;
+    private int[] free = new int[16];
+    private int nFree;
+
+    PlayerRegistry(int nCells, DirtyCells dirty)
+    {
+        this.occupancy = new AtomicIntegerArray(nCells);
+        this.dirty = dirty;
+    }
+
+    static Image image(int playerId)
+    {
+        return IMAGES[playerId % N_IMAGES];
+    }
+
+    // a new player on cell, returning its id
+    int add(int cell)
+    {
+        int playerId = acquire();
+        enter(cell);
+        positions.set(playerId, cell);
+        return playerId;
+    }
+
+    // move player playerId to cell; no effect if it is not on the board
+    void move(int playerId, int cell)
+    {
+        int current = positions.get(playerId);
+        if (current == PlayerPositions.ABSENT || current == cell)
+            return;
+        enter(cell);
+        positions.set(playerId, cell);
+        leave(current);
+    }
+
+    // take player playerId off the board, and recycle its slot
+    void remove(int playerId)
+    {
+        int current = positions.get(playerId);
+        if (current == PlayerPositions.ABSENT)
+            return;
+        positions.set(playerId, PlayerPositions.ABSENT);
+        leave(current);
+        release(playerId);
+    }
+
+    // take all players off the board; not safe while players move
+    void removeAll()
+    {
+        int slots;
+        synchronized (this) {
+            slots = nSlots;
+        }
+        for (int playerId = 0; playerId < slots; playerId++)
+            remove(playerId);
+    }
+
+    int count(int cell)
+    {
+        return occupancy.get(cell);
+    }
+
+    void snapshot(PositionSnapshot snapshot)
+    {
+        positions.snapshot(snapshot);
+    }
+
+    private void enter(int cell)
+    {
+        occupancy.incrementAndGet(cell);
+        dirty.mark(cell);
+    }
+
+    private void leave(int cell)
+    {
+        occupancy.decrementAndGet(cell);
+        dirty.mark(cell);
+    }
+
+    private synchronized int acquire()
+    {
+        if (nFree > 0)
+            return free[--nFree];
+        return nSlots++;
+    }
+
+    private synchronized void release(int playerId)
+    {
+        if (nFree == free.length)
+            free = Arrays.copyOf(free, 2 * free.length);
+        free[nFree++] = playerId;
+    }
+}
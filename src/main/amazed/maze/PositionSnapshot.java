@@ -0,0 +1,69 @@
+package amazed.maze;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+// the players' positions at some moment, filled by
+// PlayerPositions.snapshot, from which painters draw the players. The
+// positions are copied into a buffer reused across calls, then indexed
+// by cell, so that painters look up the players in a cell in constant
+// time; the index holds the occupied cells only, and a new one is
+// published by every snapshot, so readers can keep the last one while
+// the next is taken
+class PositionSnapshot
+{
+    private int[] buffer = new int[0];
+    // occupied cell --> number of players in it, and the lowest of their ids
+    private volatile Map<Integer, int[]> occupied = new HashMap<>();
+    private volatile int nPlayers;
+
+    // buffer to copy length positions into
+    int[] buffer(int length)
+    {
+        if (buffer.length < length)
+            buffer = new int[length];
+        return buffer;
+    }
+
+    // make the first length positions of the buffer the current ones
+    void publish(int length)
+    {
+        Map<Integer, int[]> index = new HashMap<>();
+        int count = 0;
+        for (int playerId = 0; playerId < length; playerId++) {
+            int cell = buffer[playerId];
+            if (cell == PlayerPositions.ABSENT)
+                continue;
+            count += 1;
+            int[] players = index.get(cell);
+            if (players == null)
+                index.put(cell, new int[] { 1, playerId });
+            else
+                players[0] += 1;
+        }
+        nPlayers = count;
+        occupied = index;
+    }
+
+    // number of players on the board
+    int countPlayers()
+    {
+        return nPlayers;
+    }
+
+    // number of players in cell (an index row * cols + col)
+    int countPlayers(int cell)
+    {
+        int[] players = occupied.get(cell);
+        return players == null ? 0 : players[0];
+    }
+
+    // identifier of some player in cell, or PlayerRegistry.NONE if
+    // there are none
+    int playerAt(int cell)
+    {
+        int[] players = occupied.get(cell);
+        return players == null ? PlayerRegistry.NONE : players[1];
+    }
+}
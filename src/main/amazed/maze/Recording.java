@@ -0,0 +1,136 @@
+package amazed.maze;
+
+import java.util.Arrays;
+
+/**
+ * <code>Recording</code> is the sequence of player events of a
+ * search, as recorded by a {@link MoveJournal} and ordered by time.
+ * A recording can be replayed on the board of the maze it was
+ * recorded on, at any speed and from any point. If the journal lost
+ * events, the players spawned by lost events are not replayed.
+ */
+
+public class Recording
+{
+    // nanoseconds since the journal was created
+    private final long[] times;
+    // packed events, see MoveJournal
+    private final long[] events;
+    // number of events overwritten in the journal before recording
+    private final long lost;
+    // recorded player id --> player id on the board being replayed on,
+    // since the board recycles identifiers of removed players;
+    // NOT_SPAWNED for players without a replayed spawn
+    private int[] onBoard = new int[0];
+    private static final int NOT_SPAWNED = -1;
+
+    Recording(long[] times, long[] events, long lost)
+    {
+        this.times = times;
+        this.events = events;
+        this.lost = lost;
+    }
+
+    /**
+     * Returns the number of events in the recording.
+     *
+     * @return   the number of recorded events
+     */
+    public int size()
+    {
+        return events.length;
+    }
+
+    /**
+     * Returns the number of events of the search missing from the
+     * recording, because the journal overwrote them.
+     *
+     * @return   the number of lost events, as in {@link MoveJournal#lostEvents()}
+     */
+    public long lostEvents()
+    {
+        return lost;
+    }
+
+    /**
+     * Returns the time of an event, relative to the creation of the
+     * journal.
+     *
+     * @param index   the position of the event, between 0 and <code>size() - 1</code>
+     * @return        the time of the event, in nanoseconds
+     */
+    public long time(int index)
+    {
+        return times[index];
+    }
+
+    /**
+     * Returns the duration of the recording, from the first event to
+     * the last one.
+     *
+     * @return   the duration of the recording, in nanoseconds
+     */
+    public long duration()
+    {
+        return events.length == 0 ? 0 : times[events.length - 1] - times[0];
+    }
+
+    /**
+     * Returns the number of events that happened no later than
+     * <code>time</code> after the first event.
+     *
+     * @param time   a time since the first event, in nanoseconds
+     * @return       the number of events up to <code>time</code>
+     */
+    public int eventsUntil(long time)
+    {
+        if (events.length == 0)
+            return 0;
+        int index = Arrays.binarySearch(times, times[0] + time);
+        if (index < 0)
+            return -index - 1;
+        // include all events with the same time
+        while (index < times.length && times[index] <= times[0] + time)
+            index += 1;
+        return index;
+    }
+
+    // apply events from (inclusive) to to (exclusive) to board; a
+    // replay from 0 expects a board without players; moves and
+    // removals of players whose spawn was lost are skipped
+    void replay(Board board, int from, int to)
+    {
+        if (from == 0)
+            Arrays.fill(onBoard, NOT_SPAWNED);
+        for (int i = from; i < to; i++) {
+            long event = events[i];
+            int playerId = MoveJournal.playerId(event);
+            int id = MoveJournal.nodeId(event);
+            switch (MoveJournal.kind(event)) {
+            case MoveJournal.SPAWN:
+                if (playerId >= onBoard.length) {
+                    int length = onBoard.length;
+                    onBoard = Arrays.copyOf(onBoard, Math.max(playerId + 1, 2 * length));
+                    Arrays.fill(onBoard, length, onBoard.length, NOT_SPAWNED);
+                }
+                onBoard[playerId] = board.newPlayer(id);
+                break;
+            case MoveJournal.MOVE:
+                if (spawned(playerId))
+                    board.movePlayer(onBoard[playerId], id);
+                break;
+            case MoveJournal.REMOVE:
+                if (spawned(playerId)) {
+                    board.removePlayer(onBoard[playerId]);
+                    onBoard[playerId] = NOT_SPAWNED;
+                }
+                break;
+            }
+        }
+    }
+
+    private boolean spawned(int playerId)
+    {
+        return playerId < onBoard.length && onBoard[playerId] != NOT_SPAWNED;
+    }
+}
@@ -0,0 +1,107 @@
+package amazed.service;
+
+import amazed.maze.Maze;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// parsed mazes, by SHA-256 hash of their map's text, evicting the
+// least recently used one beyond a capacity; mazes are not animated,
+// so concurrent solves can share them
+class MapCache
+{
+    private final int capacity;
+    private final Map<String, Maze> mazes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    MapCache(int capacity)
+    {
+        this.capacity = capacity;
+        this.mazes = new LinkedHashMap<String, Maze>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Maze> eldest)
+            {
+                return size() > MapCache.this.capacity;
+            }
+        };
+    }
+
+    // hexadecimal SHA-256 hash of the text of a map
+    static String hash(byte[] map)
+    {
+        try {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b: MessageDigest.getInstance("SHA-256").digest(map))
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM implements SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    // the maze of hash, or null if it is not cached
+    Maze get(String hash)
+    {
+        Maze maze;
+        synchronized (mazes) {
+            maze = mazes.get(hash);
+        }
+        if (maze == null)
+            misses.increment();
+        else
+            hits.increment();
+        return maze;
+    }
+
+    // the maze of the text of a map, parsed unless it is cached
+    Maze get(String hash, byte[] map)
+    throws IOException
+    {
+        Maze maze = get(hash);
+        if (maze != null)
+            return maze;
+        // parse outside the lock: concurrent misses of the same map
+        // may both parse it, which is harmless
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(map), StandardCharsets.UTF_8)) {
+            maze = Maze.parse(reader, hash.substring(0, 12));
+        }
+        synchronized (mazes) {
+            Maze cached = mazes.putIfAbsent(hash, maze);
+            return cached == null ? maze : cached;
+        }
+    }
+
+    int size()
+    {
+        synchronized (mazes) {
+            return mazes.size();
+        }
+    }
+
+    int capacity()
+    {
+        return capacity;
+    }
+
+    long hits()
+    {
+        return hits.sum();
+    }
+
+    long misses()
+    {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,104 @@
+package amazed.service;
+
+import amazed.solver.SolutionCache;
+import amazed.solver.SolveScheduler;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// counts the requests of the service, and keeps the latencies of the
+// most recent solves to report their percentiles
+class ServiceMetrics
+{
+    private static final int WINDOW = 1024;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder solves = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+
+    // ring buffer of solve latencies, in nanoseconds
+    private final long[] latencies = new long[WINDOW];
+    private long recorded;
+
+    void request()
+    {
+        requests.increment();
+    }
+
+    void error()
+    {
+        errors.increment();
+    }
+
+    void upload()
+    {
+        uploads.increment();
+    }
+
+    void solved(long nanos)
+    {
+        solves.increment();
+        synchronized (latencies) {
+            latencies[(int) (recorded % WINDOW)] = nanos;
+            recorded += 1;
+        }
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    // the metrics and those of cache, as a JSON object
+    String toJson(MapCache cache, SolutionCache solutions, SolveScheduler scheduler)
+    {
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(recorded, WINDOW));
+        }
+        Arrays.sort(window);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long solved = solves.sum();
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"uptimeSeconds\": ").append(String.format(Locale.ROOT, "%.1f", seconds));
+        json.append(", \"requests\": ").append(requests.sum());
+        json.append(", \"errors\": ").append(errors.sum());
+        json.append(", \"uploads\": ").append(uploads.sum());
+        json.append(", \"solves\": ").append(solved);
+        json.append(", \"solvesPerSecond\": ").append(String.format(Locale.ROOT, "%.3f", solved / seconds));
+        if (window.length > 0) {
+            json.append(", \"latencyWindow\": ").append(window.length);
+            json.append(", \"latencyMinMs\": ").append(millis(window[0]));
+            json.append(", \"latencyMedianMs\": ").append(millis(rank(window, 50)));
+            json.append(", \"latencyP99Ms\": ").append(millis(rank(window, 99)));
+            json.append(", \"latencyMaxMs\": ").append(millis(window[window.length - 1]));
+        }
+        json.append(", \"cachedMaps\": ").append(cache.size());
+        json.append(", \"cacheCapacity\": ").append(cache.capacity());
+        json.append(", \"cacheHits\": ").append(cache.hits());
+        json.append(", \"cacheMisses\": ").append(cache.misses());
+        json.append(", \"cachedSolutions\": ").append(solutions.size());
+        json.append(", \"solutionCacheBytes\": ").append(solutions.getBytes());
+        json.append(", \"solutionCacheCapacity\": ").append(solutions.getCapacity());
+        json.append(", \"solutionCacheHits\": ").append(solutions.getHits());
+        json.append(", \"solutionCacheMisses\": ").append(solutions.getMisses());
+        json.append(", \"solutionCacheEvictions\": ").append(solutions.getEvictions());
+        for (SolveScheduler.Priority priority: SolveScheduler.Priority.values()) {
+            String name = priority.name().toLowerCase(Locale.ROOT);
+            json.append(", \"").append(name).append("Workers\": ").append(scheduler.getParallelism(priority));
+            json.append(", \"").append(name).append("Running\": ").append(scheduler.getRunning(priority));
+            json.append(", \"").append(name).append("Waiting\": ").append(scheduler.getWaiting(priority));
+        }
+        return json.append('}').toString();
+    }
+
+    // nearest-rank percentile of sorted values
+    private static long rank(long[] sorted, double percentile)
+    {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
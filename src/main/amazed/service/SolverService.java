@@ -0,0 +1,444 @@
+package amazed.service;
+
+import amazed.maze.Maze;
+import amazed.maze.PathCodec;
+import amazed.solver.SolutionCache;
+import amazed.solver.SolveBudgetExceededException;
+import amazed.solver.SolveCancelledException;
+import amazed.solver.SolveScheduler;
+import amazed.solver.Solvers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>SolverService</code> is an HTTP service that solves mazes in
+ * a long-running JVM, so that repeated queries skip starting a JVM
+ * and parsing their map.
+ * <p>
+ * Parsed mazes are kept in a cache of bounded size, keyed by the
+ * SHA-256 hash of their map's text, which evicts the least recently
+ * used maze. The outcomes of solves are kept in a
+ * {@link SolutionCache}, configured by its system properties and saved
+ * when the service stops, so that repeated queries are answered
+ * without searching. The service answers, in JSON:
+ * <ul>
+ * <li><code>POST /maps</code>, with the text of a map as body:
+ *     parses and caches the map, and returns its hash;</li>
+ * <li><code>POST /solve</code>, with the text of a map as body, or
+ *     <code>GET /solve?map=HASH</code> for a cached map, or
+ *     <code>GET /solve?file=NAME</code> for a map file in the maps
+ *     directory: solves the map, and returns the path found;</li>
+ * <li><code>GET /metrics</code>: returns the counts of requests and
+ *     solves, the throughput, percentiles of the latency of recent
+ *     solves, and the state of the caches.</li>
+ * </ul>
+ * Solve requests take parameters <code>solver</code> (a name accepted
+ * by {@link Solvers}, <code>sequential</code> by default),
+ * <code>forkAfter</code> (<code>3</code> by default),
+ * <code>timeout</code> (the milliseconds after which the solve is
+ * abandoned with status 504; no limit by default),
+ * <code>priority</code> (<code>high</code>, <code>normal</code>, the
+ * default, or <code>low</code>), and
+ * <code>format</code>: <code>json</code> (the default) returns the
+ * path as an array of <code>[row, column]</code> pairs,
+ * <code>compact</code> as the string encoded by {@link PathCodec}.
+ * For solver <code>cluster</code>, <code>forkAfter</code> is the
+ * number of worker JVMs, between 1 and the number of processors.
+ * <p>
+ * The service has no authentication: it only listens on the loopback
+ * interface, so that only local clients reach it, and refuses bodies
+ * larger than {@link #MAX_BODY_BYTES} with status 413.
+ * <p>
+ * Requests are handled by virtual threads when the JVM has them, by
+ * a cached thread pool otherwise; solvers run in the pools of a
+ * {@link SolveScheduler}, according to their priority.
+ */
+
+public class SolverService
+{
+    /**
+     * The port on which the service listens by default.
+     */
+    public static final int DEFAULT_PORT = 8384;
+
+    /**
+     * The largest body of a request, in bytes.
+     */
+    public static final int MAX_BODY_BYTES = 32 << 20;
+
+    private static final int DEFAULT_CACHE = 64;
+    private static final String DEFAULT_MAPS_DIR = "maps";
+    private static final int DEFAULT_FORK_AFTER = 3;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final MapCache cache;
+    private final SolutionCache solutions;
+    private final SolveScheduler scheduler = new SolveScheduler();
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final File mapsDir;
+
+    // a request that cannot be served, with the HTTP status to answer
+    private static class RequestException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Creates a service listening on the loopback interface, which
+     * doesn't accept requests until it is started.
+     *
+     * @param port        the port to listen on; <code>0</code> for any free port
+     * @param cacheSize   the largest number of parsed mazes kept
+     * @param mapsDir     the directory of map files that requests may refer to
+     * @throws IOException if the port cannot be bound, or the file
+     *         of the solution cache cannot be read
+     */
+    public SolverService(int port, int cacheSize, File mapsDir)
+    throws IOException
+    {
+        this.cache = new MapCache(cacheSize);
+        this.solutions = SolutionCache.fromProperties();
+        this.mapsDir = mapsDir;
+        this.executor = newExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/maps", handler(this::upload));
+        server.createContext("/solve", handler(this::solve));
+        server.createContext("/metrics", handler(exchange -> metrics.toJson(cache, solutions, scheduler)));
+    }
+
+    // a virtual thread per task if the JVM has them (Java 21 and
+    // later), found by reflection so that the service also compiles
+    // and runs on older JVMs
+    private static ExecutorService newExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting at most
+     * <code>delaySeconds</code> for those being handled, and saves
+     * the solution cache if it has a file.
+     *
+     * @param delaySeconds   the longest time to wait, in seconds
+     * @throws IOException if the solution cache cannot be saved
+     */
+    public void stop(int delaySeconds)
+    throws IOException
+    {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            scheduler.shutdown(TimeUnit.SECONDS.toMillis(delaySeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        solutions.save();
+    }
+
+    /**
+     * Returns the port on which the service listens.
+     *
+     * @return   the bound port
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    // an endpoint's body of a JSON answer
+    private interface Endpoint
+    {
+        String answer(HttpExchange exchange) throws IOException, RequestException;
+    }
+
+    private HttpHandler handler(Endpoint endpoint)
+    {
+        return exchange -> {
+            metrics.request();
+            int status = 200;
+            String body;
+            try {
+                body = endpoint.answer(exchange);
+            } catch (RequestException e) {
+                metrics.error();
+                status = e.status;
+                body = "{\"error\": " + quote(e.getMessage()) + "}";
+            } catch (IOException | RuntimeException e) {
+                metrics.error();
+                status = 500;
+                body = "{\"error\": " + quote(String.valueOf(e)) + "}";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        };
+    }
+
+    private String upload(HttpExchange exchange)
+    throws IOException, RequestException
+    {
+        if (!exchange.getRequestMethod().equals("POST"))
+            throw new RequestException(405, "Maps must be uploaded with POST");
+        byte[] map = readBody(exchange);
+        String hash = MapCache.hash(map);
+        Maze maze = parse(hash, map);
+        metrics.upload();
+        return "{\"map\": " + quote(hash) + ", \"rows\": " + maze.rows() + ", \"cols\": " + maze.cols() + "}";
+    }
+
+    private String solve(HttpExchange exchange)
+    throws IOException, RequestException
+    {
+        Map<String, String> query = query(exchange);
+        String solverName = query.getOrDefault("solver", Solvers.SEQUENTIAL);
+        if (!Solvers.names().contains(solverName))
+            throw new RequestException(400, "Unknown solver " + solverName);
+        int forkAfter;
+        try {
+            forkAfter = Integer.parseInt(query.getOrDefault("forkAfter", Integer.toString(DEFAULT_FORK_AFTER)));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid forkAfter " + query.get("forkAfter"));
+        }
+        if (forkAfter < 0)
+            throw new RequestException(400, "Invalid forkAfter " + forkAfter);
+        // forkAfter is the number of worker JVMs of a cluster solve
+        if (solverName.equals(Solvers.CLUSTER)
+            && (forkAfter < 1 || forkAfter > Runtime.getRuntime().availableProcessors()))
+            throw new RequestException(400, "A cluster solve needs between 1 and "
+                                       + Runtime.getRuntime().availableProcessors() + " workers");
+        long timeout;
+        try {
+            timeout = Long.parseLong(query.getOrDefault("timeout", "0"));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid timeout " + query.get("timeout"));
+        }
+        SolveScheduler.Priority priority;
+        try {
+            priority = SolveScheduler.Priority.valueOf(query.getOrDefault("priority", "normal").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Unknown priority " + query.get("priority"));
+        }
+        String format = query.getOrDefault("format", "json");
+        if (!format.equals("json") && !format.equals("compact"))
+            throw new RequestException(400, "Unknown format " + format);
+
+        String hash;
+        Maze maze;
+        if (query.containsKey("map")) {
+            hash = query.get("map");
+            maze = cache.get(hash);
+            if (maze == null)
+                throw new RequestException(404, "Map " + hash + " is not cached; upload it");
+        } else {
+            byte[] map = query.containsKey("file") ? readMapFile(query.get("file")) : readBody(exchange);
+            hash = MapCache.hash(map);
+            maze = parse(hash, map);
+        }
+
+        long start = System.nanoTime();
+        List<Integer> path = solutions.get(maze, solverName);
+        boolean cached = path != null;
+        if (cached) {
+            if (path.isEmpty())
+                path = null;
+        } else {
+            try {
+                path = scheduler.submit(solverName, maze, forkAfter, priority, timeout).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SolveBudgetExceededException)
+                    throw new RequestException(422, e.getCause().getMessage());
+                if (e.getCause() instanceof SolveCancelledException)
+                    throw new RequestException(504, e.getCause().getMessage());
+                throw e;
+            }
+            solutions.put(maze, solverName, path);
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.solved(elapsed);
+
+        StringBuilder json = new StringBuilder(64 + (path == null ? 0 : 10 * path.size()));
+        json.append("{\"map\": ").append(quote(hash));
+        json.append(", \"solver\": ").append(quote(solverName));
+        json.append(", \"found\": ").append(path != null);
+        json.append(", \"cached\": ").append(cached);
+        json.append(", \"millis\": ").append(String.format(Locale.ROOT, "%.3f", elapsed / 1e6));
+        if (path != null) {
+            json.append(", \"length\": ").append(path.size());
+            json.append(", \"path\": ");
+            if (format.equals("compact")) {
+                json.append(quote(PathCodec.encode(maze, path)));
+            } else {
+                json.append('[');
+                String separator = "";
+                for (int[] position: PathCodec.positions(maze, path)) {
+                    json.append(separator).append('[').append(position[0]).append(", ").append(position[1]).append(']');
+                    separator = ", ";
+                }
+                json.append(']');
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private Maze parse(String hash, byte[] map)
+    throws RequestException
+    {
+        try {
+            return cache.get(hash, map);
+        } catch (IOException e) {
+            throw new RequestException(400, "Invalid map: " + e.getMessage());
+        }
+    }
+
+    // the body of a request, refusing those over MAX_BODY_BYTES
+    private static byte[] readBody(HttpExchange exchange)
+    throws IOException, RequestException
+    {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES)
+                throw new RequestException(413, "Body larger than " + MAX_BODY_BYTES + " bytes");
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid Content-Length " + length);
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            // chunked bodies have no length: read one byte beyond the limit
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES)
+                throw new RequestException(413, "Body larger than " + MAX_BODY_BYTES + " bytes");
+            if (body.length == 0)
+                throw new RequestException(400, "No map given: send one as body, or use parameter map or file");
+            return body;
+        }
+    }
+
+    // the text of a map file in the maps directory, refusing names
+    // that reach outside it
+    private byte[] readMapFile(String name)
+    throws IOException, RequestException
+    {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.startsWith("."))
+            throw new RequestException(400, "Invalid map file name " + name);
+        File file = new File(mapsDir, name);
+        if (!file.isFile())
+            throw new RequestException(404, "No map file " + name);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static Map<String, String> query(HttpExchange exchange)
+    {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return parameters;
+        for (String pair: query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                               URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String quote(String text)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char ch: text.toCharArray()) {
+            if (ch == '"' || ch == '\\')
+                quoted.append('\\').append(ch);
+            else if (ch < 0x20)
+                quoted.append(String.format("\\u%04x", (int) ch));
+            else
+                quoted.append(ch);
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void printUsageAndExit()
+    {
+        System.out.println("SolverService: solves mazes over HTTP.\n"
+                           + "\n"
+                           + "usage: java " + SolverService.class.getName() + " [PORT [CACHE [MAPS_DIR]]]\n"
+                           + "\n"
+                           + " PORT      port to listen on, on the loopback interface (default: " + DEFAULT_PORT + ")\n"
+                           + " CACHE     largest number of parsed maps kept (default: " + DEFAULT_CACHE + ")\n"
+                           + " MAPS_DIR  directory of the map files requests may refer to (default: "
+                           + DEFAULT_MAPS_DIR + ")");
+        System.exit(0);
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        int port = DEFAULT_PORT, cacheSize = DEFAULT_CACHE;
+        String mapsDir = DEFAULT_MAPS_DIR;
+        try {
+            if (args.length > 0)
+                port = Integer.parseInt(args[0]);
+            if (args.length > 1)
+                cacheSize = Integer.parseInt(args[1]);
+            if (args.length > 2)
+                mapsDir = args[2];
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (args.length > 3 || port < 0 || cacheSize < 1)
+            printUsageAndExit();
+        SolverService service = new SolverService(port, cacheSize, new File(mapsDir));
+        service.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                service.stop(1);
+            } catch (IOException e) {
+                System.err.println("Cannot save solution cache: " + e.getMessage());
+            }
+        }));
+        System.out.println("Solving mazes on port " + service.getPort());
+    }
+}
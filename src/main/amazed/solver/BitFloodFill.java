@@ -0,0 +1,315 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>BitFloodFill</code> is a breadth-first reachability engine
+ * that works on 64 cells at a time.
+ * <p>
+ * The accessible cells of a maze are stored as a row-major
+ * <em>bitboard</em>: every row of the grid is a sequence of
+ * <code>long</code> words, and bit <code>c % 64</code> of word
+ * <code>c / 64</code> stands for the cell in column <code>c</code>.
+ * The frontier and the set of visited cells use the same layout, so
+ * one BFS level is computed word by word: the frontier shifted one
+ * column east and west (carrying bits across word boundaries) and
+ * one row north and south, masked with the passable cells that have
+ * not been visited yet. Rows are split in bands that are expanded in
+ * parallel; each band only writes its own rows, and only reads the
+ * frontier of the level being expanded.
+ * <p>
+ * No per-cell distance or predecessor is recorded. Instead, the BFS
+ * level of every visited cell is kept modulo 3 in two more
+ * bitboards: neighbors of a cell at level <code>d</code> are at levels
+ * <code>d - 1</code>, <code>d</code> or <code>d + 1</code>, which are
+ * distinct modulo 3, so a shortest path can be walked back from the
+ * goal by picking at each step a visited neighbor one level lower.
+ */
+
+public class BitFloodFill
+{
+    // minimum number of words a band must hold to be worth splitting
+    private static final int MIN_BAND_WORDS = 1 << 12;
+
+    private final int rows;
+    private final int cols;
+    // number of words per row
+    private final int words;
+    // mask of the meaningful bits of the last word of each row
+    private final long lastMask;
+
+    private final long[] passable;
+    private final long[] goals;
+    private long[] visited;
+    private long[] frontier;
+    private long[] next;
+    // level of each visited cell modulo 3, as bit 0 and bit 1
+    private long[] level0;
+    private long[] level1;
+
+    private int levels;
+    private long reached;
+    // smallest index (row * cols + col) of a goal reached, or -1
+    private final AtomicLong goalFound = new AtomicLong();
+    // level at which goalFound was first set, or -1
+    private int goalLevel;
+    // if not null, searches stop early once it is cancelled
+    private SolveCancellation cancellation;
+
+    /**
+     * Creates the bitboard of the accessible cells and goals of
+     * <code>maze</code>.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BitFloodFill(Maze maze)
+    {
+        rows = maze.rows();
+        cols = maze.cols();
+        words = (cols + 63) >>> 6;
+        lastMask = (cols & 63) == 0 ? -1L : (1L << (cols & 63)) - 1;
+        passable = new long[rows * words];
+        goals = new long[rows * words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int word = row * words + (col >>> 6);
+                long bit = 1L << (col & 63);
+                if (maze.isAccessible(row, col))
+                    passable[word] |= bit;
+                if (maze.hasGoal(row, col))
+                    goals[word] |= bit;
+            }
+        }
+    }
+
+    // stop searches, between two levels, once cancellation is cancelled;
+    // the results of a search stopped so are incomplete
+    void setCancellation(SolveCancellation cancellation)
+    {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Runs a breadth-first search from cell <code>row</code>,
+     * <code>col</code>. If <code>stopAtGoal</code> holds, the search
+     * stops at the first level that reaches a goal; otherwise it
+     * floods every reachable cell.
+     *
+     * @param row          the row of the start cell
+     * @param col          the column of the start cell
+     * @param stopAtGoal   whether to stop as soon as a goal is reached
+     * @return             the index <code>row * cols + col</code> of a
+     *                     goal at shortest distance from the start cell;
+     *                     <code>-1</code> if no goal has been reached
+     */
+    public long search(int row, int col, boolean stopAtGoal)
+    {
+        visited = new long[rows * words];
+        frontier = new long[rows * words];
+        next = new long[rows * words];
+        level0 = new long[rows * words];
+        level1 = new long[rows * words];
+        levels = 0;
+        reached = 0;
+        goalFound.set(-1);
+        goalLevel = -1;
+        if (!isSet(passable, row, col))
+            return -1;
+
+        int word = row * words + (col >>> 6);
+        frontier[word] = visited[word] = 1L << (col & 63);
+        reached = 1;
+        if (isSet(goals, row, col)) {
+            goalFound.set(index(row, col));
+            goalLevel = 0;
+            if (stopAtGoal)
+                return goalFound.get();
+        }
+        while (true) {
+            // a cancelled solve doesn't need the result
+            if (cancellation != null && cancellation.isCancelled())
+                break;
+            long added = expand(levels + 1);
+            if (added == 0)
+                break;
+            levels += 1;
+            reached += added;
+            if (goalLevel < 0 && goalFound.get() >= 0) {
+                goalLevel = levels;
+                if (stopAtGoal)
+                    break;
+            }
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+        return goalFound.get();
+    }
+
+    /**
+     * Returns the number of cells reached by the last search.
+     *
+     * @return   the number of visited cells, including the start cell
+     */
+    public long reachedCells()
+    {
+        return reached;
+    }
+
+    /**
+     * Returns the number of BFS levels expanded by the last search;
+     * if a goal was found, this is its distance from the start cell.
+     *
+     * @return   the depth of the last search
+     */
+    public int levels()
+    {
+        return levels;
+    }
+
+    /**
+     * Tests whether the last search reached cell <code>row</code>,
+     * <code>col</code>.
+     *
+     * @param row   the row of the cell
+     * @param col   the column of the cell
+     * @return      <code>true</code> if the cell has been visited
+     */
+    public boolean isReached(int row, int col)
+    {
+        return visited != null && isSet(visited, row, col);
+    }
+
+    /**
+     * Returns a shortest path from the start cell of the last search
+     * to cell <code>index</code>, which must have been reached at
+     * the last level of the search (as the goal returned by
+     * <code>search</code> with <code>stopAtGoal</code>).
+     *
+     * @param index   the cell, as <code>row * cols + col</code>
+     * @return        the cells of the path, as <code>row * cols + col</code>,
+     *                from the start cell to <code>index</code>
+     */
+    public long[] pathTo(long index)
+    {
+        long[] path = new long[levels + 1];
+        int row = (int) (index / cols), col = (int) (index % cols);
+        path[levels] = index;
+        for (int level = levels - 1; level >= 0; level--) {
+            int mod = level % 3;
+            if (isAt(row - 1, col, mod))
+                row -= 1;
+            else if (isAt(row + 1, col, mod))
+                row += 1;
+            else if (isAt(row, col - 1, mod))
+                col -= 1;
+            else if (isAt(row, col + 1, mod))
+                col += 1;
+            else
+                throw new IllegalStateException("Broken BFS levels at " + row + ", " + col);
+            path[level] = index(row, col);
+        }
+        return path;
+    }
+
+    // expand the frontier by one level, recording it in next
+    private long expand(int level)
+    {
+        long total = (long) rows * words;
+        if (total < 2 * MIN_BAND_WORDS || ForkJoinPool.getCommonPoolParallelism() < 2)
+            return expandRows(0, rows, level);
+        int bandRows = Math.max(1, MIN_BAND_WORDS / words);
+        // runs in the current pool, or in the common pool outside of any pool
+        return new Band(0, rows, bandRows, level).invoke();
+    }
+
+    private long expandRows(int fromRow, int toRow, int level)
+    {
+        long added = 0;
+        int mod = level % 3;
+        for (int row = fromRow; row < toRow; row++) {
+            int base = row * words;
+            for (int w = 0; w < words; w++) {
+                int i = base + w;
+                long cur = frontier[i];
+                long east = (cur << 1) | (w > 0 ? frontier[i - 1] >>> 63 : 0);
+                long west = (cur >>> 1) | (w + 1 < words ? frontier[i + 1] << 63 : 0);
+                long north = row > 0 ? frontier[i - words] : 0;
+                long south = row + 1 < rows ? frontier[i + words] : 0;
+                long grown = (east | west | north | south) & passable[i] & ~visited[i];
+                if (w + 1 == words)
+                    grown &= lastMask;
+                next[i] = grown;
+                if (grown == 0)
+                    continue;
+                visited[i] |= grown;
+                if ((mod & 1) != 0)
+                    level0[i] |= grown;
+                if ((mod & 2) != 0)
+                    level1[i] |= grown;
+                added += Long.bitCount(grown);
+                long goal = grown & goals[i];
+                // keep the goal of the shallowest level only
+                if (goal != 0 && goalLevel < 0) {
+                    long index = (long) row * cols + ((long) w << 6) + Long.numberOfTrailingZeros(goal);
+                    goalFound.accumulateAndGet(index, (a, b) -> a < 0 ? b : Math.min(a, b));
+                }
+            }
+        }
+        return added;
+    }
+
+    // is row, col a visited cell at a level congruent to mod?
+    private boolean isAt(int row, int col, int mod)
+    {
+        if (row < 0 || row >= rows || col < 0 || col >= cols || !isSet(visited, row, col))
+            return false;
+        int level = (isSet(level0, row, col) ? 1 : 0) | (isSet(level1, row, col) ? 2 : 0);
+        return level == mod;
+    }
+
+    private boolean isSet(long[] bits, int row, int col)
+    {
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+            return false;
+        return (bits[row * words + (col >>> 6)] & (1L << (col & 63))) != 0;
+    }
+
+    private long index(int row, int col)
+    {
+        return (long) row * cols + col;
+    }
+
+    // a band of rows expanded in parallel, split in halves
+    private class Band extends RecursiveTask<Long>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromRow, toRow, bandRows, level;
+
+        Band(int fromRow, int toRow, int bandRows, int level)
+        {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandRows = bandRows;
+            this.level = level;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            if (toRow - fromRow <= bandRows)
+                return expandRows(fromRow, toRow, level);
+            int middle = (fromRow + toRow) >>> 1;
+            Band upper = new Band(fromRow, middle, bandRows, level);
+            Band lower = new Band(middle, toRow, bandRows, level);
+            lower.fork();
+            long added = upper.compute();
+            return added + lower.join();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>BitParallelSolver</code> implements a solver for
+ * <code>Maze</code> objects using the bit-parallel breadth-first
+ * search of {@link BitFloodFill}. The returned path is a shortest
+ * path from the start node to the nearest goal.
+ * <p>
+ * The solver doesn't animate the search: it only moves a player to
+ * the goal once it is found.
+ */
+
+public class BitParallelSolver extends SequentialSolver
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BitParallelSolver(Maze maze)
+    {
+        super(maze);
+        this.metrics = new SolveMetrics(Solvers.BIT_PARALLEL);
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code>, with a
+     * bit-parallel breadth-first search.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    protected List<Integer> search()
+    {
+        checkCancelled();
+        BitFloodFill engine = new BitFloodFill(maze);
+        engine.setCancellation(cancellation);
+        int player = maze.newPlayer(start);
+        long goal = engine.search(maze.rowOf(start), maze.colOf(start), true);
+        metrics.expanded(engine.reachedCells());
+        checkCancelled();
+        if (goal < 0) {
+            // no goal reachable: the player is done
+            maze.removePlayer(player);
+            return null;
+        }
+        int cols = maze.cols();
+        long[] cells = engine.pathTo(goal);
+        List<Integer> path = new ArrayList<>(cells.length);
+        for (long cell: cells)
+            path.add(maze.cellId((int) (cell / cols), (int) (cell % cols)));
+        maze.move(player, path.get(path.size() - 1));
+        return path;
+    }
+}
@@ -0,0 +1,135 @@
+package amazed.solver;
+
+import java.util.List;
+
+/**
+ * <code>ExplorationEvent</code> is a step of a search, published by
+ * an {@link ExplorationPublisher}.
+ * <p>
+ * Node identifiers are only meaningful within the maze searched; the
+ * row and column of the node are given too, for subscribers that draw
+ * or log the search.
+ */
+
+public class ExplorationEvent
+{
+    /**
+     * The kinds of steps of a search.
+     */
+    public enum Kind
+    {
+        /**
+         * A task visited a node and added its neighbors to its frontier.
+         */
+        EXPANDED,
+        /**
+         * A task forked a new task starting from a node.
+         */
+        FORKED,
+        /**
+         * A task reached a goal node.
+         */
+        GOAL_FOUND,
+        /**
+         * The solve returned a path to a goal, ending at the node.
+         */
+        PATH_READY
+    }
+
+    private final Kind kind;
+    private final String solver;
+    private final int node;
+    private final int row;
+    private final int col;
+    private final long nanoTime;
+    private final List<Integer> path;
+
+    ExplorationEvent(Kind kind, String solver, int node, int row, int col, List<Integer> path)
+    {
+        this.kind = kind;
+        this.solver = solver;
+        this.node = node;
+        this.row = row;
+        this.col = col;
+        this.nanoTime = System.nanoTime();
+        this.path = path;
+    }
+
+    /**
+     * Returns the kind of step.
+     *
+     * @return   the kind of the event
+     */
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    /**
+     * Returns the name of the solver searching.
+     *
+     * @return   the solver's name, as in {@link SolveMetrics#getSolver()}
+     */
+    public String getSolver()
+    {
+        return solver;
+    }
+
+    /**
+     * Returns the node of the step.
+     *
+     * @return   the identifier of the node in the maze searched
+     */
+    public int getNode()
+    {
+        return node;
+    }
+
+    /**
+     * Returns the row of the node of the step.
+     *
+     * @return   the row of the node
+     */
+    public int getRow()
+    {
+        return row;
+    }
+
+    /**
+     * Returns the column of the node of the step.
+     *
+     * @return   the column of the node
+     */
+    public int getCol()
+    {
+        return col;
+    }
+
+    /**
+     * Returns when the step happened.
+     *
+     * @return   the value of <code>System.nanoTime()</code> at the step
+     */
+    public long getNanoTime()
+    {
+        return nanoTime;
+    }
+
+    /**
+     * Returns the path of a <code>PATH_READY</code> event.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal; <code>null</code> for other kinds of events
+     */
+    public List<Integer> getPath()
+    {
+        return path;
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind + " " + solver + " " + row + "," + col
+            + (path == null ? "" : " length " + path.size());
+    }
+}
@@ -0,0 +1,239 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>ExplorationPublisher</code> publishes the steps of searches
+ * as they run, so that a display, a metrics sink or a log can observe
+ * them without slowing them down.
+ * <p>
+ * Solvers publish to it once it is set with
+ * {@link SequentialSolver#setExplorationPublisher}. Every solver
+ * publishes a <code>PATH_READY</code> event when its solve returns a
+ * path; {@link SequentialSolver}, {@link ForkJoinSolver} and
+ * {@link JumpPointSolver} also publish the steps of their search.
+ * Every thread running tasks collects their {@link ExplorationEvent}s
+ * in a batch of its own, which it offers to the subscribers when it
+ * is full; when a solve returns, all batches are offered, and those of
+ * threads that have terminated since, such as pool workers retired
+ * when idle, are then forgotten. Subscribers
+ * receive lists of events, in the order of each thread, through
+ * <code>java.util.concurrent.Flow</code>, with backpressure: a batch
+ * that a subscriber has no room for in its buffer is dropped for that
+ * subscriber, and counted, instead of making the solver wait.
+ * Optionally only one <code>EXPANDED</code> event in
+ * <code>sampleEvery</code> recorded by each thread is published,
+ * whatever the tasks and solves it runs; all other kinds always are.
+ * <p>
+ * Batches are delivered by threads of the publisher, not by the
+ * solver's threads.
+ */
+
+public class ExplorationPublisher
+    implements Flow.Publisher<List<ExplorationEvent>>, AutoCloseable
+{
+    /**
+     * The number of events in a batch if no other is given.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final int batchSize;
+    private final int sampleEvery;
+    private final ExecutorService executor;
+    private final SubmissionPublisher<List<ExplorationEvent>> publisher;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    // the batch of every live thread that recorded events, and of dead
+    // ones until their last events are flushed
+    private final ThreadLocal<Batch> threadBatch = new ThreadLocal<>();
+    private final Queue<Batch> batches = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a publisher of all events, in batches of the default
+     * size, with subscribers' buffers of the default capacity of
+     * <code>Flow</code>.
+     */
+    public ExplorationPublisher()
+    {
+        this(DEFAULT_BATCH_SIZE, 1, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param batchSize        the number of events in a full batch, at least 1
+     * @param sampleEvery      publish one <code>EXPANDED</code> event in
+     *                         <code>sampleEvery</code> recorded by each
+     *                         thread, at least 1
+     * @param bufferCapacity   the largest number of batches waiting for
+     *                         each subscriber, at least 1
+     * @throws IllegalArgumentException if a parameter is less than 1
+     */
+    public ExplorationPublisher(int batchSize, int sampleEvery, int bufferCapacity)
+    {
+        if (batchSize < 1 || sampleEvery < 1 || bufferCapacity < 1)
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + ", sampling " + sampleEvery
+                                               + " or buffer capacity " + bufferCapacity);
+        this.batchSize = batchSize;
+        this.sampleEvery = sampleEvery;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "amazed-exploration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<ExplorationEvent>> subscriber)
+    {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Returns the number of batches offered to subscribers.
+     *
+     * @return   the number of batches published since creation
+     */
+    public long getPublishedBatches()
+    {
+        return published.sum();
+    }
+
+    /**
+     * Returns the number of batches dropped for subscribers without
+     * room for them; a batch dropped for two subscribers counts twice.
+     *
+     * @return   the number of dropped batches since creation
+     */
+    public long getDroppedBatches()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * Completes all subscriptions, after the batches already
+     * published, and stops the publisher's threads once they are
+     * delivered. Batches offered after closing are ignored.
+     */
+    @Override
+    public void close()
+    {
+        publisher.close();
+        executor.shutdown();
+    }
+
+    // record that a task of solver expanded node of maze
+    void expanded(Maze maze, String solver, int node)
+    {
+        batch().expanded(maze, solver, node);
+    }
+
+    // record that a task of solver forked a task starting from node
+    void forked(Maze maze, String solver, int node)
+    {
+        batch().add(ExplorationEvent.Kind.FORKED, maze, solver, node, null);
+    }
+
+    // record that a task of solver reached goal node
+    void goalFound(Maze maze, String solver, int node)
+    {
+        batch().add(ExplorationEvent.Kind.GOAL_FOUND, maze, solver, node, null);
+    }
+
+    // record that a solve of solver returned path, and publish all
+    // events collected so far
+    void pathReady(Maze maze, String solver, List<Integer> path)
+    {
+        if (!path.isEmpty())
+            batch().add(ExplorationEvent.Kind.PATH_READY, maze, solver, path.get(path.size() - 1),
+                        Collections.unmodifiableList(new ArrayList<>(path)));
+        flush();
+    }
+
+    /**
+     * Publishes the events collected so far by all threads, without
+     * waiting for their batches to be full. Solves do it when they
+     * return.
+     */
+    public void flush()
+    {
+        for (Iterator<Batch> i = batches.iterator(); i.hasNext(); ) {
+            Batch batch = i.next();
+            // a terminated thread adds nothing after this flush
+            boolean terminated = !batch.owner.isAlive();
+            batch.flush();
+            if (terminated)
+                i.remove();
+        }
+    }
+
+    // the batch of the current thread
+    private Batch batch()
+    {
+        Batch batch = threadBatch.get();
+        if (batch == null) {
+            batch = new Batch();
+            threadBatch.set(batch);
+            batches.add(batch);
+        }
+        return batch;
+    }
+
+    private void offer(List<ExplorationEvent> events)
+    {
+        if (publisher.isClosed() || !publisher.hasSubscribers())
+            return;
+        published.increment();
+        publisher.offer(events, (subscriber, item) -> {
+            dropped.increment();
+            return false;
+        });
+    }
+
+    // the events of one thread; only flush is called by other threads,
+    // so the lock is practically never contended
+    private class Batch
+    {
+        private final Thread owner = Thread.currentThread();
+        private List<ExplorationEvent> events = new ArrayList<>(batchSize);
+        // EXPANDED events recorded by the thread, for sampling
+        private int expansions;
+
+        synchronized void expanded(Maze maze, String solver, int node)
+        {
+            if (expansions++ % sampleEvery == 0)
+                add(ExplorationEvent.Kind.EXPANDED, maze, solver, node, null);
+        }
+
+        synchronized void add(ExplorationEvent.Kind kind, Maze maze, String solver, int node, List<Integer> path)
+        {
+            if (!publisher.hasSubscribers())
+                return;
+            events.add(new ExplorationEvent(kind, solver, node, maze.rowOf(node), maze.colOf(node), path));
+            if (events.size() >= batchSize)
+                flush();
+        }
+
+        // offer the events collected so far, if any
+        synchronized void flush()
+        {
+            if (events.isEmpty())
+                return;
+            offer(Collections.unmodifiableList(events));
+            events = new ArrayList<>(batchSize);
+        }
+    }
+}
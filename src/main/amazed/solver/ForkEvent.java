@@ -0,0 +1,44 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// a task forked by a parallel solver
+@Name("amazed.Fork")
+@Label("Task Fork")
+@Category({ "Amazed", "Solver" })
+@Description("A search task forked by a parallel solver")
+@StackTrace(false)
+class ForkEvent extends Event
+{
+    @Label("Maze")
+    String maze;
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Start Node")
+    int node;
+
+    @Label("Steps")
+    @Description("Steps of the forking task before the fork")
+    int steps;
+
+    static void record(Maze maze, String solver, int node, int steps)
+    {
+        ForkEvent event = new ForkEvent();
+        if (event.shouldCommit()) {
+            event.maze = maze.getName();
+            event.solver = solver;
+            event.node = node;
+            event.steps = steps;
+            event.commit();
+        }
+    }
+}
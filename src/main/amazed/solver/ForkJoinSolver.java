@@ -4,6 +4,7 @@ import amazed.maze.Maze;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <code>ForkJoinSolver</code> implements a solver for
@@ -26,6 +27,8 @@ public class ForkJoinSolver extends SequentialSolver
     public ForkJoinSolver(Maze maze)
     {
         super(maze);
+        this.metrics = new SolveMetrics(Solvers.PARALLEL);
+        this.visitedCount = new LongAdder();
     }
 
     /**
@@ -45,6 +48,22 @@ public class ForkJoinSolver extends SequentialSolver
         this.forkAfter = forkAfter;
     }
 
+    // a task forked by parent, that searches from node remoteStart in
+    // the structures of parent's solve; it shares everything solve-wide
+    // rather than creating its own and dropping it
+    private ForkJoinSolver(ForkJoinSolver parent, int remoteStart){
+        super(parent.maze, parent.metrics, parent.budget, parent.cancellation, parent.exploration);
+        this.forkAfter = parent.forkAfter;
+        this.forked = true;
+        this.remoteStart = remoteStart;
+        this.steps = parent.steps;
+        this.visited = parent.visited;
+        this.predecessor = parent.predecessor;
+        this.visitedCount = parent.visitedCount;
+        this.forkPermits = parent.forkPermits;
+        this.frontier = new Stack<>();
+    }
+
     /**
      * Searches for and returns the path, as a list of node
      * identifiers, that goes from the start node to a goal node in
@@ -58,6 +77,28 @@ public class ForkJoinSolver extends SequentialSolver
      */
     @Override
     public List<Integer> compute(){
+        // forked tasks are part of their root's solve
+        if(forked){
+            markAllocation();
+            try{ return parallelDepthFirstSearch(); }
+            finally{
+                chargeAllocation();
+                if(forkPermits != null){ forkPermits.release(); }
+            }
+        }
+        return super.compute();
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code>, with a
+     * fork/join depth-first search.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found.
+     */
+    @Override
+    protected List<Integer> search(){
         return parallelDepthFirstSearch();
     }
 
@@ -67,25 +108,55 @@ public class ForkJoinSolver extends SequentialSolver
     protected boolean forked = false;
     protected int steps = 0;
     protected boolean forkWhenAvailable = false;
+    // permits of the forked tasks that may run at once, shared by all
+    // tasks of a solve; null if unlimited
+    protected Semaphore forkPermits = null;
+
+    /**
+     * Limits the number of forked tasks of the solve that exist at
+     * once; when none is left, a task explores the nodes it would
+     * have forked for itself.
+     *
+     * @param maxTasks   the largest number of forked tasks;
+     *                   <code>0</code> or less for no limit
+     */
+    public void setTaskQuota(int maxTasks){
+        forkPermits = maxTasks > 0 ? new Semaphore(maxTasks) : null;
+    }
+
+    // nodes added to visited by all tasks of the solve, counted as they
+    // are added: the size of the shared skip list takes a walk over it
+    private LongAdder visitedCount;
 
     private Set<ForkJoinSolver> activePlayers = new HashSet<>();
+    // nodes this task added to visited, to tell the neighbours claimed
+    // first by other tasks from those claimed by this task earlier
+    private Set<Integer> claimed = new HashSet<>();
 
     private List<Integer> parallelDepthFirstSearch() {
         init();
         // if forked, then start on another location rather than moving there
         int startPos = forked ? remoteStart : start;
 
-        visited.add(startPos);
+        // a forked task's start was added by its parent
+        if(visited.add(startPos)){ visitedCount.increment(); }
+        claimed.add(startPos);
         // start new player
         playerID = maze.newPlayer(startPos);
+        metrics.playerAdded();
         frontier.push(startPos);
 
         while(!frontier.isEmpty()){
+            checkCancelled();
             currentPosition = frontier.pop();
+            metrics.expanded();
+            if(exploration != null){ exploration.expanded(maze, metrics.getSolver(), currentPosition); }
 
             // check if the current node is the goal node
             if(maze.hasGoal(currentPosition)){
                 maze.move(playerID, currentPosition);
+                GoalFoundEvent.record(maze, metrics.getSolver(), currentPosition, steps);
+                if(exploration != null){ exploration.goalFound(maze, metrics.getSolver(), currentPosition); }
                 return pathFromTo(start, currentPosition);
             }
 
@@ -96,29 +167,34 @@ public class ForkJoinSolver extends SequentialSolver
             // if the visited list does not contain the visited node then add it to
             // the list and add it to predecessor
             Set<Integer> nonVisited = new HashSet<>();
+            Integer cameFrom = predecessor.get(currentPosition);
             for(int n : neighbours){
                 if(visited.add(n)){
+                    visitedCount.increment();
                     predecessor.put(n, currentPosition);
                     nonVisited.add(n);
+                    claimed.add(n);
                 }
+                // a duplicate is a node another task reached first
+                else if(!claimed.contains(n) && (cameFrom == null || n != cameFrom)){ metrics.duplicate(); }
             }
 
             // only allow forking after a certain amount of steps
             // we only need to fork when there are multiple neighbours
             steps += 1;
+            if(steps % BUDGET_CHECK_INTERVAL == 0){ checkBudget(); }
             if(forkAfter > 0 && steps % (forkAfter) == 0){ forkWhenAvailable = true; }
 
             for(int n : nonVisited){
                 if(nonVisited.isEmpty()){ break; }
                 // only fork when there are multiple neighbours
-                if(nonVisited.size() > 1 && forkWhenAvailable) {
-                    ForkJoinSolver tmpSolver = new ForkJoinSolver(maze, this.forkAfter);
+                if(nonVisited.size() > 1 && forkWhenAvailable
+                   && (forkPermits == null || forkPermits.tryAcquire())) {
+                    ForkJoinSolver tmpSolver = new ForkJoinSolver(this, n);
                     activePlayers.add(tmpSolver);
-                    tmpSolver.remoteStart = n;
-                    tmpSolver.forked = true;
-                    tmpSolver.predecessor = this.predecessor;
-                    tmpSolver.visited = this.visited;
-                    tmpSolver.steps = this.steps;
+                    metrics.forked();
+                    ForkEvent.record(maze, metrics.getSolver(), n, steps);
+                    if(exploration != null){ exploration.forked(maze, metrics.getSolver(), n); }
                 }
                 else {
                     // if there only is one neighbour then move to it rather than forking
@@ -126,6 +202,7 @@ public class ForkJoinSolver extends SequentialSolver
                     frontier.push(n);
                 }
             }
+            metrics.frontier(frontier.size());
 
             // if some threads have been spawned, then reset the fork when available value
             if(!activePlayers.isEmpty()){ forkWhenAvailable = false; }
@@ -138,16 +215,51 @@ public class ForkJoinSolver extends SequentialSolver
             //join up all instances in hopes that one of the children found a path to the goal
             for(ForkJoinSolver tmp : activePlayers){
                 try{
-                    List<Integer> path = tmp.join();
-                    if(path != null){ return path; }
+                    JoinWaitEvent wait = new JoinWaitEvent();
+                    wait.begin();
+                    long joinStart = System.nanoTime();
+                    // a child run by this thread while joining accounts its own allocation
+                    chargeAllocation();
+                    List<Integer> path;
+                    try{ path = tmp.join(); }
+                    finally{ markAllocation(); }
+                    metrics.joined(System.nanoTime() - joinStart);
+                    wait.record(maze, metrics.getSolver(), path != null);
+                    // the goal was reached by a child's player, not by ours
+                    if(path != null){
+                        maze.removePlayer(playerID);
+                        metrics.playerRemoved();
+                        return path;
+                    }
                 }
+                // a child over the budget, or cancelled, fails the whole solve
+                catch (SolveBudgetExceededException ex){ throw ex; }
+                catch (SolveCancelledException ex){ throw ex; }
                 catch (Exception ex){ err("Error: " + ex.getLocalizedMessage(), ex); }
             }
+            // every child is forked and joined once
+            activePlayers.clear();
         }
 
+        // this task is done: free its player for the next fork
+        maze.removePlayer(playerID);
+        metrics.playerRemoved();
         return null;
     }
 
+    /**
+     * Checks the estimated size of the shared <code>visited</code> and
+     * <code>predecessor</code>, and of this task's <code>frontier</code>,
+     * against the budget. Every visited node but the start has a
+     * predecessor.
+     */
+    @Override
+    protected void checkBudget(){
+        long nodes = visitedCount.sum();
+        budget.check(metrics, MemoryBudget.estimate(nodes, Math.max(0, nodes - 1), frontier.size(),
+                                                    visited instanceof ConcurrentSkipListSet));
+    }
+
     /**
      * Make the visited list a concurrent safe list if its not.
      * Also make the predecessor concurrent safe if its not.
@@ -0,0 +1,44 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// a task reaching a goal node
+@Name("amazed.GoalFound")
+@Label("Goal Found")
+@Category({ "Amazed", "Solver" })
+@Description("A search task reaching a goal node")
+@StackTrace(false)
+class GoalFoundEvent extends Event
+{
+    @Label("Maze")
+    String maze;
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Goal Node")
+    int node;
+
+    @Label("Steps")
+    @Description("Steps of the task that reached the goal")
+    int steps;
+
+    static void record(Maze maze, String solver, int node, int steps)
+    {
+        GoalFoundEvent event = new GoalFoundEvent();
+        if (event.shouldCommit()) {
+            event.maze = maze.getName();
+            event.solver = solver;
+            event.node = node;
+            event.steps = steps;
+            event.commit();
+        }
+    }
+}
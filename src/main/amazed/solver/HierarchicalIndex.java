@@ -0,0 +1,559 @@
+package amazed.solver;
+
+import amazed.maze.MapLoadEvent;
+import amazed.maze.Maze;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * <code>HierarchicalIndex</code> is a precomputed abstraction of a
+ * maze for hierarchical path finding (HPA*).
+ * <p>
+ * The grid is split in square <em>clusters</em> of a fixed size.
+ * Wherever two neighboring clusters touch along a run of accessible
+ * cells, the middle of the run becomes an <em>entrance</em>: a pair
+ * of <em>portal</em> nodes, one on each side, connected by an edge of
+ * length 1. Goals are nodes too. Inside every cluster, the distances
+ * between all its nodes are computed by a breadth-first search that
+ * doesn't leave the cluster; clusters are processed in parallel.
+ * <p>
+ * A query searches the resulting abstract graph, which is much
+ * smaller than the maze, and then refines only the clusters along
+ * the abstract route into a cell-by-cell path. Paths are not
+ * guaranteed to be shortest, but they are close to.
+ * <p>
+ * The index holds its own copy of the layout of the maze and the
+ * {@link Maze#contentHash() content hash} of the maze it was built
+ * for, and is only used for mazes with the same contents. It is built
+ * once per map and reused: <code>forMaze(Maze)</code> keeps the
+ * indexes of recently indexed contents in memory, and the index is
+ * <code>Serializable</code>, so that <code>save</code> and
+ * <code>load</code> keep it across runs.
+ */
+
+public class HierarchicalIndex
+    implements Serializable
+{
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The default side of a cluster, in cells.
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    private static final int NO_NODE = -1;
+    // the number of indexes kept in memory by forMaze(Maze)
+    private static final int CACHED_INDEXES = 8;
+    private static final int[][] MOVES = { { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 } };
+
+    // indexes built by forMaze(Maze), by content hash of their maze,
+    // from least to most recently used
+    private static final Map<String, HierarchicalIndex> CACHED = new LinkedHashMap<String, HierarchicalIndex>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HierarchicalIndex> eldest)
+        {
+            return size() > CACHED_INDEXES;
+        }
+    };
+
+    private final String contentHash;
+    private final int rows;
+    private final int cols;
+    private final int clusterSize;
+    private final int clusterCols;
+    // accessible cells and goals, one bit per row * cols + col
+    private final long[] passable;
+    private final long[] goals;
+
+    // node --> cell, as row * cols + col
+    private final int[] nodeCell;
+    // node --> whether it is a goal
+    private final boolean[] goalNode;
+    // cluster --> nodes in it
+    private final int[][] clusterNodes;
+    // node --> adjacent nodes, and length of the edges to them
+    private final int[][] adjacent;
+    private final int[][] length;
+
+    // cancellation, if not null, is checked once per row and once per
+    // cluster
+    private HierarchicalIndex(Maze maze, int clusterSize, SolveCancellation cancellation)
+    {
+        this.contentHash = maze.contentHash();
+        this.rows = maze.rows();
+        this.cols = maze.cols();
+        this.clusterSize = clusterSize;
+        this.clusterCols = (cols + clusterSize - 1) / clusterSize;
+        int clusterRows = (rows + clusterSize - 1) / clusterSize;
+        passable = new long[(int) (((long) rows * cols + 63) >>> 6)];
+        goals = new long[passable.length];
+        for (int row = 0; row < rows; row++) {
+            check(cancellation);
+            for (int col = 0; col < cols; col++) {
+                if (maze.isAccessible(row, col))
+                    set(passable, row * cols + col);
+                if (maze.hasGoal(row, col))
+                    set(goals, row * cols + col);
+            }
+        }
+
+        // entrances: pairs of portal cells, and the goals
+        List<Integer> cells = new ArrayList<>();
+        List<int[]> entrances = new ArrayList<>();
+        findEntrances(entrances);
+        Map<Integer, Integer> cellNode = new HashMap<>();
+        for (int[] entrance: entrances) {
+            addNode(cells, cellNode, entrance[0]);
+            addNode(cells, cellNode, entrance[1]);
+        }
+        for (int cell = 0; cell < rows * cols; cell++)
+            if (isSet(goals, cell))
+                addNode(cells, cellNode, cell);
+        int nNodes = cells.size();
+        nodeCell = new int[nNodes];
+        goalNode = new boolean[nNodes];
+        for (int node = 0; node < nNodes; node++) {
+            nodeCell[node] = cells.get(node);
+            goalNode[node] = isSet(goals, nodeCell[node]);
+        }
+
+        // group nodes by cluster
+        List<List<Integer>> byCluster = new ArrayList<>();
+        for (int c = 0; c < clusterRows * clusterCols; c++)
+            byCluster.add(new ArrayList<>());
+        for (int node = 0; node < nNodes; node++)
+            byCluster.get(clusterOf(nodeCell[node])).add(node);
+        clusterNodes = new int[byCluster.size()][];
+        for (int c = 0; c < clusterNodes.length; c++)
+            clusterNodes[c] = byCluster.get(c).stream().mapToInt(Integer::intValue).toArray();
+
+        // intra-cluster distances, computed in parallel per cluster
+        int[][][] intra = IntStream.range(0, clusterNodes.length)
+            .parallel()
+            .mapToObj(c -> {
+                check(cancellation);
+                return clusterDistances(c);
+            })
+            .toArray(int[][][]::new);
+
+        List<List<int[]>> edges = new ArrayList<>(nNodes);
+        for (int node = 0; node < nNodes; node++)
+            edges.add(new ArrayList<>());
+        for (int c = 0; c < clusterNodes.length; c++) {
+            int[] nodes = clusterNodes[c];
+            for (int i = 0; i < nodes.length; i++)
+                for (int j = 0; j < nodes.length; j++)
+                    if (i != j && intra[c][i][j] >= 0)
+                        edges.get(nodes[i]).add(new int[] { nodes[j], intra[c][i][j] });
+        }
+        for (int[] entrance: entrances) {
+            int a = cellNode.get(entrance[0]), b = cellNode.get(entrance[1]);
+            edges.get(a).add(new int[] { b, 1 });
+            edges.get(b).add(new int[] { a, 1 });
+        }
+        adjacent = new int[nNodes][];
+        length = new int[nNodes][];
+        for (int node = 0; node < nNodes; node++) {
+            List<int[]> out = edges.get(node);
+            adjacent[node] = new int[out.size()];
+            length[node] = new int[out.size()];
+            for (int i = 0; i < out.size(); i++) {
+                adjacent[node][i] = out.get(i)[0];
+                length[node][i] = out.get(i)[1];
+            }
+        }
+    }
+
+    /**
+     * Builds the index of <code>maze</code> with clusters of a given
+     * size.
+     *
+     * @param maze          the maze to be indexed
+     * @param clusterSize   the side of a cluster, in cells
+     * @return              the index of <code>maze</code>
+     */
+    public static HierarchicalIndex build(Maze maze, int clusterSize)
+    {
+        return build(maze, clusterSize, null);
+    }
+
+    private static HierarchicalIndex build(Maze maze, int clusterSize, SolveCancellation cancellation)
+    {
+        if (clusterSize < 2)
+            throw new IllegalArgumentException("Cluster size must be at least 2");
+        MapLoadEvent event = new MapLoadEvent(maze.getName(), "hierarchy");
+        event.begin();
+        HierarchicalIndex index = new HierarchicalIndex(maze, clusterSize, cancellation);
+        event.loaded(maze.rows(), maze.cols());
+        return index;
+    }
+
+    /**
+     * Returns the index of <code>maze</code> with clusters of the
+     * default size, shared by all mazes with the same contents: the
+     * indexes of the most recently indexed contents are kept in
+     * memory, and others are built.
+     *
+     * @param maze   the maze to be indexed
+     * @return       the index of <code>maze</code>
+     */
+    public static HierarchicalIndex forMaze(Maze maze)
+    {
+        return forMaze(maze, (SolveCancellation) null);
+    }
+
+    // forMaze(maze), abandoning the build of a missing index once
+    // cancellation is cancelled; nothing is then kept in memory
+    static HierarchicalIndex forMaze(Maze maze, SolveCancellation cancellation)
+    {
+        String hash = maze.contentHash();
+        HierarchicalIndex index;
+        synchronized (CACHED) {
+            index = CACHED.get(hash);
+        }
+        if (index != null)
+            return index;
+        // build outside the lock: concurrent misses of the same
+        // contents may both build their index, which is harmless
+        index = build(maze, DEFAULT_CLUSTER_SIZE, cancellation);
+        synchronized (CACHED) {
+            HierarchicalIndex cached = CACHED.putIfAbsent(hash, index);
+            return cached == null ? index : cached;
+        }
+    }
+
+    /**
+     * Loads the index of <code>maze</code> from <code>file</code> if
+     * it exists and fits the maze; otherwise, builds the index and
+     * saves it to <code>file</code>.
+     *
+     * @param maze   the maze to be indexed
+     * @param file   the file where the index is kept
+     * @return       the index of <code>maze</code>
+     * @throws IOException if the index cannot be read or written
+     */
+    public static HierarchicalIndex forMaze(Maze maze, File file)
+    throws IOException
+    {
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                HierarchicalIndex index = load(in);
+                if (index.fits(maze))
+                    return index;
+            }
+        }
+        HierarchicalIndex index = build(maze, DEFAULT_CLUSTER_SIZE);
+        try (OutputStream out = new FileOutputStream(file)) {
+            index.save(out);
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index to a stream.
+     *
+     * @param out   the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void save(OutputStream out)
+    throws IOException
+    {
+        ObjectOutputStream objects = new ObjectOutputStream(new BufferedOutputStream(out));
+        objects.writeObject(this);
+        objects.flush();
+    }
+
+    /**
+     * Reads an index written by <code>save</code>.
+     *
+     * @param in   the stream to read from
+     * @return     the index read
+     * @throws IOException if reading fails or the stream doesn't hold an index
+     */
+    public static HierarchicalIndex load(InputStream in)
+    throws IOException
+    {
+        ObjectInputStream objects = new ObjectInputStream(new BufferedInputStream(in));
+        try {
+            return (HierarchicalIndex) objects.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a hierarchical index", e);
+        }
+    }
+
+    /**
+     * Tests whether the index has been built for a maze with the same
+     * contents as <code>maze</code>.
+     *
+     * @param maze   a maze
+     * @return       <code>true</code> if the index was built for a maze
+     *               with the content hash of <code>maze</code>
+     */
+    public boolean fits(Maze maze)
+    {
+        return maze.rows() == rows && maze.cols() == cols && maze.contentHash().equals(contentHash);
+    }
+
+    /**
+     * Returns the number of nodes of the abstract graph.
+     *
+     * @return   the number of portals and goals
+     */
+    public int nodes()
+    {
+        return nodeCell.length;
+    }
+
+    /**
+     * Searches a path from cell <code>row</code>, <code>col</code> to
+     * the nearest goal in the abstract graph, and refines it.
+     *
+     * @param row   the row of the start cell
+     * @param col   the column of the start cell
+     * @return      the cells of the path, as <code>row * cols + col</code>;
+     *              <code>null</code> if no goal can be reached
+     */
+    public int[] findPath(int row, int col)
+    {
+        return findPath(row, col, null);
+    }
+
+    // findPath(row, col), checking cancellation, if not null, once per
+    // abstract node expanded and once per step of the refined route
+    int[] findPath(int row, int col, SolveCancellation cancellation)
+    {
+        int start = row * cols + col;
+        if (!isSet(passable, start))
+            return null;
+        if (isSet(goals, start))
+            return new int[] { start };
+
+        // connect the start cell to the nodes of its cluster
+        int cluster = clusterOf(start);
+        int[] nodes = clusterNodes[cluster];
+        int[] fromStart = distances(start, cluster, nodes);
+
+        int nNodes = nodeCell.length;
+        int[] distance = new int[nNodes];
+        int[] previous = new int[nNodes];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        Arrays.fill(previous, NO_NODE);
+        PriorityQueue<long[]> open = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < nodes.length; i++) {
+            if (fromStart[i] >= 0) {
+                distance[nodes[i]] = fromStart[i];
+                open.add(new long[] { fromStart[i], nodes[i] });
+            }
+        }
+        boolean[] done = new boolean[nNodes];
+        int goal = NO_NODE;
+        while (!open.isEmpty()) {
+            check(cancellation);
+            int node = (int) open.poll()[1];
+            if (done[node])
+                continue;
+            done[node] = true;
+            if (goalNode[node]) {
+                goal = node;
+                break;
+            }
+            for (int i = 0; i < adjacent[node].length; i++) {
+                int next = adjacent[node][i];
+                int d = distance[node] + length[node][i];
+                if (!done[next] && d < distance[next]) {
+                    distance[next] = d;
+                    previous[next] = node;
+                    open.add(new long[] { d, next });
+                }
+            }
+        }
+        if (goal == NO_NODE)
+            return null;
+
+        // refine the abstract route, cluster by cluster
+        List<Integer> route = new ArrayList<>();
+        for (int node = goal; node != NO_NODE; node = previous[node])
+            route.add(nodeCell[node]);
+        route.add(start);
+        Collections.reverse(route);
+        List<Integer> path = new ArrayList<>();
+        path.add(start);
+        for (int i = 1; i < route.size(); i++) {
+            check(cancellation);
+            int from = route.get(i - 1), to = route.get(i);
+            if (clusterOf(from) != clusterOf(to))
+                path.add(to);
+            else
+                refine(from, to, path);
+        }
+        return path.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void findEntrances(List<int[]> entrances)
+    {
+        // between horizontally adjacent clusters
+        for (int col = clusterSize - 1; col + 1 < cols; col += clusterSize)
+            for (int top = 0; top < rows; top += clusterSize)
+                addRuns(entrances, top, col, 1, 0, Math.min(clusterSize, rows - top), 1);
+        // between vertically adjacent clusters
+        for (int row = clusterSize - 1; row + 1 < rows; row += clusterSize)
+            for (int left = 0; left < cols; left += clusterSize)
+                addRuns(entrances, row, left, 0, 1, Math.min(clusterSize, cols - left), cols);
+    }
+
+    // along the border starting at row, col and going (dRow, dCol) for
+    // n cells, add an entrance in the middle of every run of cells
+    // accessible on both sides; across is the index offset to the other side
+    private void addRuns(List<int[]> entrances, int row, int col, int dRow, int dCol, int n, int across)
+    {
+        int runStart = -1;
+        for (int i = 0; i <= n; i++) {
+            int cell = (row + i * dRow) * cols + col + i * dCol;
+            boolean open = i < n && isSet(passable, cell) && isSet(passable, cell + across);
+            if (open && runStart < 0)
+                runStart = i;
+            if (!open && runStart >= 0) {
+                int middle = (runStart + i - 1) / 2;
+                int portal = (row + middle * dRow) * cols + col + middle * dCol;
+                entrances.add(new int[] { portal, portal + across });
+                runStart = -1;
+            }
+        }
+    }
+
+    private static void addNode(List<Integer> cells, Map<Integer, Integer> cellNode, int cell)
+    {
+        if (!cellNode.containsKey(cell)) {
+            cellNode.put(cell, cells.size());
+            cells.add(cell);
+        }
+    }
+
+    // distances between all nodes of a cluster, staying in the cluster;
+    // -1 stands for an unreachable node
+    private int[][] clusterDistances(int cluster)
+    {
+        int[] nodes = clusterNodes[cluster];
+        int[][] result = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++)
+            result[i] = distances(nodeCell[nodes[i]], cluster, nodes);
+        return result;
+    }
+
+    // breadth-first search from cell in cluster: distances to targets
+    private int[] distances(int cell, int cluster, int[] targets)
+    {
+        int[] dist = bfs(cell, cluster);
+        int[] result = new int[targets.length];
+        for (int i = 0; i < targets.length; i++)
+            result[i] = dist[local(nodeCell[targets[i]])];
+        return result;
+    }
+
+    // append to path the cells after from, up to to, within a cluster
+    private void refine(int from, int to, List<Integer> path)
+    {
+        int cluster = clusterOf(from);
+        int[] dist = bfs(from, cluster);
+        int[] back = new int[dist[local(to)] + 1];
+        int cell = to;
+        for (int d = back.length - 1; d >= 0; d--) {
+            back[d] = cell;
+            if (d == 0)
+                break;
+            int row = cell / cols, col = cell % cols;
+            for (int[] move: MOVES) {
+                int r = row + move[0], c = col + move[1];
+                if (inCluster(r, c, cluster) && dist[local(r * cols + c)] == d - 1) {
+                    cell = r * cols + c;
+                    break;
+                }
+            }
+        }
+        for (int d = 1; d < back.length; d++)
+            path.add(back[d]);
+    }
+
+    // breadth-first distances from cell within its cluster, indexed by
+    // local cell; -1 for unreachable cells
+    private int[] bfs(int cell, int cluster)
+    {
+        int[] dist = new int[clusterSize * clusterSize];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[dist.length];
+        int head = 0, tail = 0;
+        dist[local(cell)] = 0;
+        queue[tail++] = cell;
+        while (head < tail) {
+            int current = queue[head++];
+            int row = current / cols, col = current % cols;
+            int d = dist[local(current)];
+            for (int[] move: MOVES) {
+                int r = row + move[0], c = col + move[1];
+                if (!inCluster(r, c, cluster))
+                    continue;
+                int next = r * cols + c;
+                if (isSet(passable, next) && dist[local(next)] < 0) {
+                    dist[local(next)] = d + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return dist;
+    }
+
+    private boolean inCluster(int row, int col, int cluster)
+    {
+        return 0 <= row && row < rows && 0 <= col && col < cols
+            && clusterOf(row * cols + col) == cluster;
+    }
+
+    private static void check(SolveCancellation cancellation)
+    {
+        if (cancellation != null)
+            cancellation.check(Solvers.HIERARCHICAL);
+    }
+
+    private int clusterOf(int cell)
+    {
+        int row = cell / cols, col = cell % cols;
+        return (row / clusterSize) * clusterCols + col / clusterSize;
+    }
+
+    private int local(int cell)
+    {
+        int row = cell / cols, col = cell % cols;
+        return (row % clusterSize) * clusterSize + col % clusterSize;
+    }
+
+    private static void set(long[] bits, int index)
+    {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    private static boolean isSet(long[] bits, int index)
+    {
+        return (bits[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+}
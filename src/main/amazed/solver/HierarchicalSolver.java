@@ -0,0 +1,86 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>HierarchicalSolver</code> implements a solver for
+ * <code>Maze</code> objects using hierarchical path finding over a
+ * {@link HierarchicalIndex}. The index can be built once and shared
+ * by many solvers of the same maze; if none is given, the solver uses
+ * the one returned by {@link HierarchicalIndex#forMaze(Maze)}, which
+ * is built only by the first solve of the maze's contents.
+ * <p>
+ * The solver checks its cancellation while it builds that index, and
+ * while it searches it; a solve cancelled during the build leaves no
+ * index behind, and the next solve of the maze builds it again.
+ * <p>
+ * The solver doesn't animate the search: it only moves a player to
+ * the goal once it is found.
+ */
+
+public class HierarchicalSolver extends SequentialSolver
+{
+    private static final long serialVersionUID = 1L;
+
+    private HierarchicalIndex index;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with the shared index of its contents.
+     *
+     * @param maze   the maze to be searched
+     */
+    public HierarchicalSolver(Maze maze)
+    {
+        super(maze);
+        this.metrics = new SolveMetrics(Solvers.HIERARCHICAL);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, using a prebuilt index.
+     *
+     * @param maze    the maze to be searched
+     * @param index   an index built for <code>maze</code>
+     * @throws IllegalArgumentException if <code>index</code> doesn't fit <code>maze</code>
+     */
+    public HierarchicalSolver(Maze maze, HierarchicalIndex index)
+    {
+        this(maze);
+        if (!index.fits(maze))
+            throw new IllegalArgumentException("Index built for a maze of different contents");
+        this.index = index;
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code> in the
+     * index of the maze.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    protected List<Integer> search()
+    {
+        checkCancelled();
+        if (index == null)
+            index = HierarchicalIndex.forMaze(maze, cancellation);
+        int player = maze.newPlayer(start);
+        int[] cells = index.findPath(maze.rowOf(start), maze.colOf(start), cancellation);
+        if (cells == null) {
+            // no goal reachable: the player is done
+            maze.removePlayer(player);
+            return null;
+        }
+        int cols = maze.cols();
+        List<Integer> path = new ArrayList<>(cells.length);
+        for (int cell: cells)
+            path.add(maze.cellId(cell / cols, cell % cols));
+        maze.move(player, path.get(path.size() - 1));
+        return path;
+    }
+}
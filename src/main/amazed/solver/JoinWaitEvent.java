@@ -0,0 +1,42 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// a task waiting in join for a task it forked, or running it
+@Name("amazed.JoinWait")
+@Label("Join Wait")
+@Category({ "Amazed", "Solver" })
+@Description("A task joining a task it forked, waiting for it or running it")
+@StackTrace(false)
+class JoinWaitEvent extends Event
+{
+    @Label("Maze")
+    String maze;
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Path Found")
+    @Description("Whether the joined task returned a path to a goal")
+    boolean found;
+
+    // end the wait, whose joined task returned a path if found, and
+    // commit the event if it is recorded
+    void record(Maze maze, String solver, boolean found)
+    {
+        end();
+        if (shouldCommit()) {
+            this.maze = maze.getName();
+            this.solver = solver;
+            this.found = found;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * <code>JumpPointSolver</code> implements a solver for
+ * <code>Maze</code> objects using Jump Point Search over the
+ * 4-connected grid underlying the maze.
+ * <p>
+ * Instead of expanding every accessible cell through
+ * <code>Maze.neighbors</code>, the solver scans straight runs of
+ * cells directly on the grid and only stops at <em>jump points</em>:
+ * cells where a wall ends beside the run (a forced neighbor), where a
+ * perpendicular scan finds such a cell, or where there is a goal.
+ * Jump points are then ordered by A* using the Manhattan distance
+ * to the nearest goal as heuristic. On open, cavern-like maps this
+ * expands orders of magnitude fewer nodes than a cell-by-cell search.
+ * <p>
+ * Successive jump points always lie on the same row or column, so
+ * the returned path is reconstructed cell by cell by filling in the
+ * straight segments between them.
+ */
+
+public class JumpPointSolver extends SequentialSolver
+{
+    private static final long serialVersionUID = 1L;
+
+    private int rows;
+    private int cols;
+    // grid positions of all goals, for the heuristic
+    private int[] goalRows;
+    private int[] goalCols;
+
+    // jump point (row * cols + col) --> best known distance from start
+    private Map<Integer, Integer> distance;
+    // jump point --> jump point it was reached from
+    private Map<Integer, Integer> parent;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public JumpPointSolver(Maze maze)
+    {
+        super(maze);
+        this.metrics = new SolveMetrics(Solvers.JUMP_POINT);
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code>, with
+     * Jump Point Search.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    protected List<Integer> search()
+    {
+        rows = maze.rows();
+        cols = maze.cols();
+        findGoals();
+        distance = new HashMap<>();
+        parent = new HashMap<>();
+
+        int player = maze.newPlayer(start);
+        metrics.playerAdded();
+        int startNode = node(maze.rowOf(start), maze.colOf(start));
+        Set<Integer> closed = new HashSet<>();
+        // open list entries are (f << 32 | node), so that the lowest f comes first
+        PriorityQueue<Long> open = new PriorityQueue<>();
+        distance.put(startNode, 0);
+        open.add(entry(heuristic(startNode), startNode));
+
+        while (!open.isEmpty()) {
+            int current = (int) (open.poll() & 0xffffffffL);
+            if (!closed.add(current)) {
+                metrics.duplicate();
+                continue;
+            }
+            metrics.expanded();
+            checkCancelled();
+            int row = current / cols, col = current % cols;
+            maze.move(player, maze.cellId(row, col));
+            if (exploration != null)
+                exploration.expanded(maze, metrics.getSolver(), maze.cellId(row, col));
+            if (maze.hasGoal(row, col)) {
+                if (exploration != null)
+                    exploration.goalFound(maze, metrics.getSolver(), maze.cellId(row, col));
+                return pathTo(current);
+            }
+
+            int g = distance.get(current);
+            for (int successor: successors(current)) {
+                if (closed.contains(successor))
+                    continue;
+                int newG = g + steps(current, successor);
+                Integer oldG = distance.get(successor);
+                if (oldG == null || newG < oldG) {
+                    distance.put(successor, newG);
+                    parent.put(successor, current);
+                    open.add(entry(newG + heuristic(successor), successor));
+                }
+            }
+            metrics.frontier(open.size());
+        }
+        // all jump points explored, no goal found
+        maze.removePlayer(player);
+        metrics.playerRemoved();
+        return null;
+    }
+
+    // jump points reachable from node, pruning the directions that
+    // lead back towards the node it was reached from
+    private List<Integer> successors(int node)
+    {
+        List<Integer> result = new ArrayList<>(4);
+        int row = node / cols, col = node % cols;
+        Integer from = parent.get(node);
+        if (from == null) {
+            addIfFound(result, jumpHorizontal(row, col + 1, 1));
+            addIfFound(result, jumpHorizontal(row, col - 1, -1));
+            addIfFound(result, jumpVertical(row + 1, col, 1));
+            addIfFound(result, jumpVertical(row - 1, col, -1));
+            return result;
+        }
+        int dr = Integer.signum(row - from / cols);
+        int dc = Integer.signum(col - from % cols);
+        if (dc != 0) {
+            addIfFound(result, jumpHorizontal(row, col + dc, dc));
+            addIfFound(result, jumpVertical(row + 1, col, 1));
+            addIfFound(result, jumpVertical(row - 1, col, -1));
+        } else {
+            addIfFound(result, jumpVertical(row + dr, col, dr));
+            addIfFound(result, jumpHorizontal(row, col + 1, 1));
+            addIfFound(result, jumpHorizontal(row, col - 1, -1));
+        }
+        return result;
+    }
+
+    private static void addIfFound(List<Integer> result, int node)
+    {
+        if (node >= 0)
+            result.add(node);
+    }
+
+    // scan from row, col in horizontal direction dc; returns the first
+    // jump point on the way, or -1 if the scan runs into a wall
+    private int jumpHorizontal(int row, int col, int dc)
+    {
+        while (maze.isAccessible(row, col)) {
+            if (maze.hasGoal(row, col))
+                return node(row, col);
+            if ((maze.isAccessible(row - 1, col) && !maze.isAccessible(row - 1, col - dc))
+                || (maze.isAccessible(row + 1, col) && !maze.isAccessible(row + 1, col - dc)))
+                return node(row, col);
+            col += dc;
+        }
+        return -1;
+    }
+
+    // scan from row, col in vertical direction dr; on 4-connected grids
+    // a cell is also a jump point if a horizontal scan from it finds one
+    private int jumpVertical(int row, int col, int dr)
+    {
+        while (maze.isAccessible(row, col)) {
+            if (maze.hasGoal(row, col))
+                return node(row, col);
+            if ((maze.isAccessible(row, col - 1) && !maze.isAccessible(row - dr, col - 1))
+                || (maze.isAccessible(row, col + 1) && !maze.isAccessible(row - dr, col + 1)))
+                return node(row, col);
+            if (jumpHorizontal(row, col + 1, 1) >= 0 || jumpHorizontal(row, col - 1, -1) >= 0)
+                return node(row, col);
+            row += dr;
+        }
+        return -1;
+    }
+
+    private void findGoals()
+    {
+        List<Integer> goals = new ArrayList<>();
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+                if (maze.hasGoal(row, col))
+                    goals.add(node(row, col));
+        goalRows = new int[goals.size()];
+        goalCols = new int[goals.size()];
+        for (int i = 0; i < goals.size(); i++) {
+            goalRows[i] = goals.get(i) / cols;
+            goalCols[i] = goals.get(i) % cols;
+        }
+    }
+
+    // Manhattan distance to the nearest goal
+    private int heuristic(int node)
+    {
+        int row = node / cols, col = node % cols;
+        int best = goalRows.length == 0 ? 0 : Integer.MAX_VALUE;
+        for (int i = 0; i < goalRows.length; i++)
+            best = Math.min(best, Math.abs(row - goalRows[i]) + Math.abs(col - goalCols[i]));
+        return best;
+    }
+
+    private int steps(int from, int to)
+    {
+        return Math.abs(from / cols - to / cols) + Math.abs(from % cols - to % cols);
+    }
+
+    private int node(int row, int col)
+    {
+        return row * cols + col;
+    }
+
+    private static long entry(int f, int node)
+    {
+        return ((long) f << 32) | (node & 0xffffffffL);
+    }
+
+    // reconstruct the cell-by-cell path from the start to goal node
+    private List<Integer> pathTo(int goal)
+    {
+        List<Integer> path = new ArrayList<>();
+        int current = goal;
+        Integer previous = parent.get(current);
+        while (previous != null) {
+            int row = current / cols, col = current % cols;
+            int dr = Integer.signum(previous / cols - row);
+            int dc = Integer.signum(previous % cols - col);
+            // walk back along the straight segment, excluding previous
+            while (current != previous) {
+                path.add(maze.cellId(row, col));
+                row += dr;
+                col += dc;
+                current = node(row, col);
+            }
+            previous = parent.get(current);
+        }
+        path.add(maze.cellId(current / cols, current % cols));
+        Collections.reverse(path);
+        return path;
+    }
+}
@@ -0,0 +1,189 @@
+package amazed.solver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * <code>MemoryBudget</code> bounds the memory that one solve may
+ * retain, so that a maze too large for the heap makes its own solve
+ * fail, with a {@link SolveBudgetExceededException}, instead of
+ * running the whole JVM out of memory.
+ * <p>
+ * The depth-first solvers, {@link SequentialSolver} and
+ * {@link ForkJoinSolver}, estimate the size of their <code>visited</code>,
+ * <code>predecessor</code> and <code>frontier</code> structures from
+ * the number of their elements and the typical footprint of an
+ * element in each kind of collection, with boxed node identifiers and
+ * compressed references; the estimate is checked regularly against the
+ * budget while searching. In a parallel solve, the estimate covers the
+ * shared structures and the frontier of the task checking it; the
+ * elements of the shared structures are counted as they are added,
+ * since the size of a concurrent skip list takes a walk over it.
+ * <p>
+ * The budget of new solvers is read from system property
+ * <code>amazed.solver.budget</code>, a number of bytes with an
+ * optional suffix <code>k</code>, <code>m</code> or <code>g</code>
+ * (e.g. <code>-Damazed.solver.budget=256m</code>); without it, solves
+ * are unlimited. Solvers also account the bytes allocated during the
+ * solve, measured per thread by the JVM, in {@link SolveMetrics}.
+ */
+
+public class MemoryBudget
+{
+    /**
+     * The name of the system property giving the default budget.
+     */
+    public static final String PROPERTY = "amazed.solver.budget";
+
+    /**
+     * The budget that never limits a solve.
+     */
+    public static final MemoryBudget UNLIMITED = new MemoryBudget(0);
+
+    // estimated bytes per element: boxed node (16), entry node, and
+    // share of the table or of the skip list's index
+    private static final long HASH_SET_ENTRY = 56;
+    private static final long HASH_MAP_ENTRY = 72;
+    private static final long SKIP_SET_ENTRY = 48;
+    private static final long SKIP_MAP_ENTRY = 64;
+    private static final long STACK_ENTRY = 24;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = allocationSupported();
+
+    private final long maxBytes;
+
+    /**
+     * Creates a budget of <code>maxBytes</code> bytes.
+     *
+     * @param maxBytes   the largest estimated size of a solve's
+     *                   structures, in bytes; <code>0</code> for no limit
+     */
+    public MemoryBudget(long maxBytes)
+    {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Negative memory budget " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the budget set by system property
+     * <code>amazed.solver.budget</code>.
+     *
+     * @return   the budget in the property, or <code>UNLIMITED</code>
+     *           if it isn't set
+     * @throws IllegalArgumentException if the property is not a valid size
+     */
+    public static MemoryBudget fromProperty()
+    {
+        String value = System.getProperty(PROPERTY);
+        if (value == null || value.isEmpty())
+            return UNLIMITED;
+        return new MemoryBudget(parseSize(value));
+    }
+
+    /**
+     * Parses a size in bytes, such as <code>512k</code> or
+     * <code>2g</code>.
+     *
+     * @param size   a number of bytes, with an optional suffix
+     *               <code>k</code>, <code>m</code> or <code>g</code>
+     * @return       the number of bytes
+     * @throws IllegalArgumentException if <code>size</code> is not a valid size
+     */
+    public static long parseSize(String size)
+    {
+        String digits = size.trim().toLowerCase();
+        long unit = 1;
+        if (digits.endsWith("k"))
+            unit = 1L << 10;
+        else if (digits.endsWith("m"))
+            unit = 1L << 20;
+        else if (digits.endsWith("g"))
+            unit = 1L << 30;
+        if (unit > 1)
+            digits = digits.substring(0, digits.length() - 1);
+        try {
+            return Math.multiplyExact(Long.parseLong(digits), unit);
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid memory size " + size, e);
+        }
+    }
+
+    /**
+     * Returns the largest size allowed.
+     *
+     * @return   the budget in bytes; <code>0</code> if unlimited
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Tests whether the budget limits solves.
+     *
+     * @return   <code>true</code> unless this budget is unlimited
+     */
+    public boolean isLimited()
+    {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Estimates the bytes retained by the structures of a search.
+     *
+     * @param visited       the set of visited nodes
+     * @param predecessor   the predecessor of each visited node
+     * @param frontier      the nodes to be visited next
+     * @return              the estimated size of the three structures, in bytes
+     */
+    public static long estimate(Set<Integer> visited, Map<Integer, Integer> predecessor,
+                                Collection<Integer> frontier)
+    {
+        return estimate(visited.size(), predecessor.size(), frontier.size(),
+                        visited instanceof ConcurrentSkipListSet && predecessor instanceof ConcurrentSkipListMap);
+    }
+
+    // estimate(visited, predecessor, frontier) from the number of
+    // elements of each, concurrent if visited and predecessor are
+    // skip lists
+    static long estimate(long visited, long predecessors, long frontier, boolean concurrent)
+    {
+        long bytes = frontier * STACK_ENTRY;
+        bytes += visited * (concurrent ? SKIP_SET_ENTRY : HASH_SET_ENTRY);
+        bytes += predecessors * (concurrent ? SKIP_MAP_ENTRY : HASH_MAP_ENTRY);
+        return bytes;
+    }
+
+    // record the estimated size of a solve's structures in metrics,
+    // and fail the solve if it exceeds the budget
+    void check(SolveMetrics metrics, long estimate)
+    {
+        metrics.retained(estimate);
+        if (maxBytes > 0 && estimate > maxBytes)
+            throw new SolveBudgetExceededException(metrics.getSolver(), estimate, maxBytes);
+    }
+
+    // bytes allocated so far by the current thread, or -1 if the JVM
+    // doesn't measure them
+    static long allocatedBytes()
+    {
+        if (!ALLOCATION_SUPPORTED)
+            return -1;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean allocationSupported()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return false;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+    }
+}
@@ -48,9 +48,34 @@ public class SequentialSolver
     {
         this.maze = maze;
         this.start = maze.start();
+        this.metrics = new SolveMetrics(Solvers.SEQUENTIAL);
+        this.budget = MemoryBudget.fromProperty();
+        this.cancellation = new SolveCancellation();
         initStructures();
     }
 
+    /**
+     * Creates a task of a solve already under way, which shares the
+     * solve's metrics, budget, cancellation and publisher. The
+     * subclass creating it sets up the search structures.
+     *
+     * @param maze           the maze being searched
+     * @param metrics        the metrics of the solve
+     * @param budget         the memory budget of the solve
+     * @param cancellation   the cancellation of the solve
+     * @param exploration    the publisher of the solve, or <code>null</code>
+     */
+    protected SequentialSolver(Maze maze, SolveMetrics metrics, MemoryBudget budget,
+                               SolveCancellation cancellation, ExplorationPublisher exploration)
+    {
+        this.maze = maze;
+        this.start = maze.start();
+        this.metrics = metrics;
+        this.budget = budget;
+        this.cancellation = cancellation;
+        this.exploration = exploration;
+    }
+
     /**
      * Initializes <code>visited</code>, <code>predecessor</code>, and
      * <code>frontier</code> with empty data structures for sequential
@@ -97,6 +122,143 @@ public class SequentialSolver
      * starts.
      */
     protected int start;
+    /**
+     * The metrics of the solve, shared by all tasks of the same
+     * solve and reported to {@link SolverMonitor}.
+     */
+    protected SolveMetrics metrics;
+    /**
+     * The memory budget of the solve, shared by all its tasks, by
+     * default the one in system property
+     * <code>amazed.solver.budget</code>.
+     */
+    protected MemoryBudget budget;
+    /**
+     * The number of nodes expanded between two checks of the budget.
+     */
+    protected static final int BUDGET_CHECK_INTERVAL = 256;
+    /**
+     * The bytes allocated by the current thread when this task last
+     * accounted its allocation; <code>-1</code> if unknown.
+     */
+    protected long allocationMark = -1;
+    /**
+     * The cancellation of the solve, shared by all its tasks, checked
+     * once per expanded node.
+     */
+    protected SolveCancellation cancellation;
+    /**
+     * The publisher of the steps of the search, shared by all tasks
+     * of the solve; <code>null</code> if they are not published.
+     */
+    protected ExplorationPublisher exploration;
+
+    /**
+     * Sets the memory budget of the solve, replacing the one in
+     * system property <code>amazed.solver.budget</code>. The solve
+     * throws a {@link SolveBudgetExceededException} if the estimated
+     * size of its structures exceeds the budget.
+     *
+     * @param budget   the budget of the solve
+     */
+    public void setMemoryBudget(MemoryBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Sets the cancellation of the solve. The solve throws a
+     * {@link SolveCancelledException} soon after the cancellation is
+     * cancelled or its deadline passes.
+     *
+     * @param cancellation   the cancellation of the solve
+     */
+    public void setCancellation(SolveCancellation cancellation)
+    {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Sets the publisher of the steps of the search, as
+     * {@link ExplorationEvent}s.
+     *
+     * @param exploration   the publisher; <code>null</code> to publish nothing
+     */
+    public void setExplorationPublisher(ExplorationPublisher exploration)
+    {
+        this.exploration = exploration;
+    }
+
+    /**
+     * Publishes the exploration events not published yet, after a
+     * <code>PATH_READY</code> event if the solve found a path; solves
+     * call it when they return.
+     *
+     * @param path   the path returned by the solve, or <code>null</code>
+     */
+    protected void publishOutcome(List<Integer> path)
+    {
+        if (exploration == null)
+            return;
+        if (path != null)
+            exploration.pathReady(maze, metrics.getSolver(), path);
+        else
+            exploration.flush();
+    }
+
+    /**
+     * Checks that the solve is not cancelled.
+     *
+     * @throws SolveCancelledException if the solve is cancelled
+     */
+    protected void checkCancelled()
+    {
+        cancellation.check(metrics);
+    }
+
+    /**
+     * Checks the estimated size of <code>visited</code>,
+     * <code>predecessor</code> and <code>frontier</code> against the
+     * budget.
+     *
+     * @throws SolveBudgetExceededException if the estimate exceeds the budget
+     */
+    protected void checkBudget()
+    {
+        budget.check(metrics, MemoryBudget.estimate(visited, predecessor, frontier));
+    }
+
+    /**
+     * Starts accounting the bytes allocated by the current thread to
+     * this task.
+     */
+    protected void markAllocation()
+    {
+        allocationMark = MemoryBudget.allocatedBytes();
+    }
+
+    /**
+     * Adds the bytes allocated by the current thread since the last
+     * mark to the metrics, and marks again.
+     */
+    protected void chargeAllocation()
+    {
+        long now = MemoryBudget.allocatedBytes();
+        if (now >= 0 && allocationMark >= 0)
+            metrics.allocated(now - allocationMark);
+        allocationMark = now;
+    }
+
+    /**
+     * Returns the metrics of the solve, which are complete once
+     * <code>compute</code> has returned.
+     *
+     * @return   the metrics of this solver's solve
+     */
+    public SolveMetrics getMetrics()
+    {
+        return metrics;
+    }
 
     /**
      * Searches for and returns the path, as a list of node
@@ -104,6 +266,11 @@ public class SequentialSolver
      * the maze. If such a path cannot be found (because there are no
      * goals, or all goals are unreacheable), the method returns
      * <code>null</code>.
+     * <p>
+     * The search itself is done by <code>search</code>; this method
+     * reports the solve to {@link SolverMonitor}, records it as a
+     * Flight Recorder event, accounts its allocation and publishes its
+     * outcome, for all solvers alike.
      *
      * @return   the list of node identifiers from the start node to a
      *           goal node in the maze; <code>null</code> if such a path cannot
@@ -111,6 +278,34 @@ public class SequentialSolver
      */
     @Override
     public List<Integer> compute()
+    {
+        SolverMonitor monitor = SolverMonitor.getInstance();
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        monitor.started(metrics);
+        markAllocation();
+        List<Integer> path = null;
+        try {
+            path = search();
+            return path;
+        } finally {
+            publishOutcome(path);
+            chargeAllocation();
+            monitor.finished(metrics, path != null);
+            event.record(maze, metrics, path);
+        }
+    }
+
+    /**
+     * Searches for the path returned by <code>compute</code>, with a
+     * single-thread depth-first search. Subclasses override it to
+     * search differently.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    protected List<Integer> search()
     {
         return depthFirstSearch();
     }
@@ -119,16 +314,22 @@ public class SequentialSolver
     {
         // one player active on the maze at start
         int player = maze.newPlayer(start);
+        metrics.playerAdded();
         // start with start node
         frontier.push(start);
         // as long as not all nodes have been processed
         while (!frontier.empty()) {
+            // stop if the solve was cancelled
+            checkCancelled();
             // get the new node to process
             int current = frontier.pop();
             // if current node has a goal
             if (maze.hasGoal(current)) {
                 // move player to goal
                 maze.move(player, current);
+                GoalFoundEvent.record(maze, metrics.getSolver(), current, visited.size());
+                if (exploration != null)
+                    exploration.goalFound(maze, metrics.getSolver(), current);
                 // search finished: reconstruct and return path
                 return pathFromTo(start, current);
             }
@@ -138,6 +339,11 @@ public class SequentialSolver
                 maze.move(player, current);
                 // mark node as visited
                 visited.add(current);
+                metrics.expanded();
+                if (exploration != null)
+                    exploration.expanded(maze, metrics.getSolver(), current);
+                if (visited.size() % BUDGET_CHECK_INTERVAL == 0)
+                    checkBudget();
                 // for every node nb adjacent to current
                 for (int nb: maze.neighbors(current)) {
                     // add nb to the nodes to be processed
@@ -147,9 +353,14 @@ public class SequentialSolver
                     if (!visited.contains(nb))
                         predecessor.put(nb, current);
                 }
+                metrics.frontier(frontier.size());
+            } else {
+                metrics.duplicate();
             }
         }
-        // all nodes explored, no goal found
+        // all nodes explored, no goal found: the player is done
+        maze.removePlayer(player);
+        metrics.playerRemoved();
         return null;
     }
 
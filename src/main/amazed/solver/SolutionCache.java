@@ -0,0 +1,375 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathCodec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>SolutionCache</code> remembers the outcome of solves, so that
+ * repeating a query returns its path without searching.
+ * <p>
+ * An entry is keyed by the {@link Maze#contentHash() content hash} of
+ * the maze, the row and column of its start node, and the kind of
+ * solver: the solver's name, or <code>shortest</code> for all solvers
+ * that find shortest paths (see {@link Solvers#isShortest(String)}),
+ * which thus share their entries. Since the hash covers every cell,
+ * marking a path or any other change to a maze makes its lookups miss
+ * the entries of its former contents, and mazes loaded separately from
+ * the same map share entries even though their node identifiers
+ * differ. A solve that finds no goal is cached too.
+ * <p>
+ * Paths are stored compactly, as encoded by {@link PathCodec}: about
+ * one character per step. The cache is bounded by an estimate of its
+ * size in bytes and evicts the least recently used entries beyond it.
+ * If it has a file, it is read from it when created and written to it
+ * by <code>save</code>, as one line per entry.
+ * <p>
+ * System property <code>amazed.solutions.file</code> gives the file of
+ * the cache of {@link amazed.maze.Amazed}, and
+ * <code>amazed.solutions.capacity</code> the size of caches created
+ * from properties (e.g. <code>-Damazed.solutions.capacity=16m</code>).
+ * The methods of this class are thread safe.
+ */
+
+public class SolutionCache
+{
+    /**
+     * The name of the system property giving the file of the cache.
+     */
+    public static final String FILE_PROPERTY = "amazed.solutions.file";
+
+    /**
+     * The name of the system property giving the capacity of the cache.
+     */
+    public static final String CAPACITY_PROPERTY = "amazed.solutions.capacity";
+
+    /**
+     * The capacity of caches, in bytes, if no other is given.
+     */
+    public static final long DEFAULT_CAPACITY = 64L << 20;
+
+    private static final String FILE_HEADER = "# amazed solutions v1";
+    // the code of a solve that found no goal; encoded paths are never
+    // empty, and never start with a dash
+    private static final String NO_PATH = "-";
+    private static final String SHORTEST = "shortest";
+    // estimated bytes of an entry beyond the characters of key and
+    // code: map entry, two strings and their arrays
+    private static final long ENTRY_OVERHEAD = 160;
+
+    private final long capacity;
+    private final File file;
+    // key --> path code, from least to most recently used
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache, kept only in memory.
+     *
+     * @param capacity   the largest estimated size of the entries, in bytes
+     */
+    public SolutionCache(long capacity)
+    {
+        this.capacity = capacity;
+        this.file = null;
+    }
+
+    /**
+     * Creates a cache saved to a file, with the entries in the file
+     * if it exists.
+     *
+     * @param capacity   the largest estimated size of the entries, in bytes
+     * @param file       the file of the cache
+     * @throws IOException if the file exists but cannot be read, or is
+     *         not a cache file
+     */
+    public SolutionCache(long capacity, File file)
+    throws IOException
+    {
+        this.capacity = capacity;
+        this.file = file;
+        if (file.exists())
+            read();
+    }
+
+    /**
+     * Creates a cache as configured by system properties
+     * <code>amazed.solutions.capacity</code> and
+     * <code>amazed.solutions.file</code>.
+     *
+     * @return   a cache of the capacity in the property, or the default
+     *           one, saved to the file in the property, if it is set
+     * @throws IOException if the file exists but cannot be read
+     * @throws IllegalArgumentException if the capacity is not a valid size
+     */
+    public static SolutionCache fromProperties()
+    throws IOException
+    {
+        String size = System.getProperty(CAPACITY_PROPERTY);
+        long capacity = size == null || size.isEmpty() ? DEFAULT_CAPACITY : MemoryBudget.parseSize(size);
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.isEmpty())
+            return new SolutionCache(capacity);
+        return new SolutionCache(capacity, new File(file));
+    }
+
+    /**
+     * Returns the cached path of a solve.
+     *
+     * @param maze         the maze searched
+     * @param solverName   the name of the solver searching it
+     * @return             the path, in node identifiers of
+     *                     <code>maze</code>, found by the last solve of
+     *                     a maze with the same contents by the same kind
+     *                     of solver; an empty list if that solve found
+     *                     no goal; <code>null</code> if there is no such
+     *                     solve in the cache
+     */
+    public List<Integer> get(Maze maze, String solverName)
+    {
+        String key = key(maze, solverName);
+        String code;
+        synchronized (this) {
+            code = entries.get(key);
+        }
+        if (code == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (code.equals(NO_PATH))
+            return Collections.emptyList();
+        return PathCodec.decode(maze, code);
+    }
+
+    /**
+     * Caches the outcome of a solve. Paths that are not valid in
+     * <code>maze</code> are not cached.
+     *
+     * @param maze         the maze searched
+     * @param solverName   the name of the solver searching it
+     * @param path         the path found by the solver, or
+     *                     <code>null</code> if it found no goal
+     */
+    public void put(Maze maze, String solverName, List<Integer> path)
+    {
+        if (path != null && !maze.isValidPath(path))
+            return;
+        put(key(maze, solverName), path == null ? NO_PATH : PathCodec.encode(maze, path));
+    }
+
+    /**
+     * Solves a maze, unless the outcome of the solve is cached, and
+     * caches it.
+     *
+     * @param maze         the maze to be searched
+     * @param solverName   the name of a solver, as accepted by
+     *                     {@link Solvers#create(String, Maze, int)}
+     * @param forkAfter    passed to <code>Solvers.create</code>
+     * @param pool         the pool running the solver
+     * @return             the path found, or <code>null</code> if no goal
+     *                     is reachable
+     */
+    public List<Integer> solve(Maze maze, String solverName, int forkAfter, ForkJoinPool pool)
+    {
+        List<Integer> path = get(maze, solverName);
+        if (path != null)
+            return path.isEmpty() ? null : path;
+        path = pool.invoke(Solvers.create(solverName, maze, forkAfter));
+        put(maze, solverName, path);
+        return path;
+    }
+
+    /**
+     * Removes all entries of mazes with given contents.
+     *
+     * @param contentHash   the content hash of the mazes
+     * @return              the number of entries removed
+     */
+    public synchronized int invalidate(String contentHash)
+    {
+        int removed = 0;
+        String prefix = contentHash + " ";
+        for (Iterator<Map.Entry<String, String>> iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, String> entry = iter.next();
+            if (entry.getKey().startsWith(prefix)) {
+                bytes -= weight(entry.getKey(), entry.getValue());
+                iter.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Writes all entries to the file of the cache, replacing it
+     * atomically. It does nothing if the cache has no file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void save()
+    throws IOException
+    {
+        if (file == null)
+            return;
+        Path target = file.getAbsoluteFile().toPath();
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), "solutions", ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                out.write(FILE_HEADER);
+                out.newLine();
+                synchronized (this) {
+                    // from least to most recently used, so that reading
+                    // the file restores the order
+                    for (Map.Entry<String, String> entry: entries.entrySet()) {
+                        out.write(entry.getKey());
+                        out.write('\t');
+                        out.write(entry.getValue());
+                        out.newLine();
+                    }
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the file of the cache.
+     *
+     * @return   the file, or <code>null</code> if the cache is kept only in memory
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the largest size of the cache.
+     *
+     * @return   the capacity in bytes
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the estimated size of the entries in the cache.
+     *
+     * @return   the size in bytes, at most the capacity
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return   the number of cached solves
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return   the number of hits since the cache was created
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found no entry.
+     *
+     * @return   the number of misses since the cache was created
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the capacity.
+     *
+     * @return   the number of evictions since the cache was created
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    // content hash, start position and solver kind, separated by spaces
+    private static String key(Maze maze, String solverName)
+    {
+        int start = maze.start();
+        String kind = Solvers.isShortest(solverName) ? SHORTEST : solverName;
+        return maze.contentHash() + " " + maze.rowOf(start) + "," + maze.colOf(start) + " " + kind;
+    }
+
+    // estimated bytes of an entry: strings are counted at two bytes a
+    // character, which overestimates compact Latin-1 strings
+    private static long weight(String key, String code)
+    {
+        return ENTRY_OVERHEAD + 2L * (key.length() + code.length());
+    }
+
+    private synchronized void put(String key, String code)
+    {
+        long weight = weight(key, code);
+        if (weight > capacity)
+            return;
+        String previous = entries.put(key, code);
+        if (previous != null)
+            bytes -= weight(key, previous);
+        bytes += weight;
+        Iterator<Map.Entry<String, String>> eldest = entries.entrySet().iterator();
+        while (bytes > capacity) {
+            Map.Entry<String, String> entry = eldest.next();
+            bytes -= weight(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void read()
+    throws IOException
+    {
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!FILE_HEADER.equals(line))
+                throw new IOException(file + " is not a solution cache file");
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0)
+                    put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package amazed.solver;
+
+/**
+ * <code>SolveBudgetExceededException</code> is thrown by a solver
+ * whose structures grew beyond its {@link MemoryBudget}. The solve
+ * is abandoned; other solves in the JVM are not affected.
+ */
+
+public class SolveBudgetExceededException
+    extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long estimatedBytes;
+    private final long maxBytes;
+
+    /**
+     * Creates an exception for a solve that exceeded its budget.
+     *
+     * @param solver           the name of the solver
+     * @param estimatedBytes   the estimated size of the solve's structures
+     * @param maxBytes         the budget of the solve
+     */
+    public SolveBudgetExceededException(String solver, long estimatedBytes, long maxBytes)
+    {
+        super("Solver " + solver + " needs more than its memory budget: about "
+              + estimatedBytes + " bytes, budget " + maxBytes + " bytes");
+        this.estimatedBytes = estimatedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the estimated size of the solve's structures when it
+     * was abandoned.
+     *
+     * @return   the estimate, in bytes
+     */
+    public long getEstimatedBytes()
+    {
+        return estimatedBytes;
+    }
+
+    /**
+     * Returns the budget that was exceeded.
+     *
+     * @return   the budget, in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,97 @@
+package amazed.solver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>SolveCancellation</code> lets a solve be abandoned while it
+ * runs: explicitly, by calling <code>cancel</code>, or when its
+ * deadline passes.
+ * <p>
+ * All tasks of a solve share its cancellation, and check it once per
+ * node they expand, so that a cancelled solve releases its threads
+ * after at most one more expansion per task; a task that finds its
+ * solve cancelled throws a {@link SolveCancelledException}. The
+ * search loops of {@link SequentialSolver}, {@link ForkJoinSolver} and
+ * {@link JumpPointSolver} check it, and {@link BitParallelSolver}
+ * between two levels of its search. {@link HierarchicalSolver} checks
+ * it once per row of the maze and once per cluster while building its
+ * index, and once per abstract node expanded or cluster refined while
+ * searching it. The coordinator of a
+ * {@link amazed.cluster.ClusterSolver} checks it between two rounds
+ * of its workers, and then stops them.
+ */
+
+public class SolveCancellation
+{
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+    private volatile boolean deadlinePassed;
+
+    /**
+     * Creates a cancellation without deadline.
+     */
+    public SolveCancellation()
+    {
+        this.deadline = 0;
+        this.hasDeadline = false;
+    }
+
+    /**
+     * Creates a cancellation whose deadline passes after a given time
+     * from now.
+     *
+     * @param timeout   the time left to the solve; <code>0</code> or
+     *                  less for no deadline
+     * @param unit      the unit of <code>timeout</code>
+     */
+    public SolveCancellation(long timeout, TimeUnit unit)
+    {
+        this.hasDeadline = timeout > 0;
+        this.deadline = System.nanoTime() + (hasDeadline ? unit.toNanos(timeout) : 0);
+    }
+
+    /**
+     * Cancels the solve: its tasks stop at their next check.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the solve is cancelled, explicitly or because
+     * its deadline passed.
+     *
+     * @return   <code>true</code> if the solve must stop
+     */
+    public boolean isCancelled()
+    {
+        if (cancelled)
+            return true;
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            deadlinePassed = true;
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Checks that the solve is not cancelled.
+     *
+     * @param metrics   the metrics of the solve
+     * @throws SolveCancelledException if the solve is cancelled
+     */
+    void check(SolveMetrics metrics)
+    {
+        check(metrics.getSolver());
+    }
+
+    // throw a SolveCancelledException on behalf of the solver called
+    // solver if the solve is cancelled
+    void check(String solver)
+    {
+        if (isCancelled())
+            throw new SolveCancelledException(solver, deadlinePassed);
+    }
+}
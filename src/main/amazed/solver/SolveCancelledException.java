@@ -0,0 +1,40 @@
+package amazed.solver;
+
+/**
+ * <code>SolveCancelledException</code> is thrown by a solver whose
+ * {@link SolveCancellation} was cancelled, or whose deadline passed.
+ * The solve is abandoned, and its tasks stop at their next check;
+ * other solves in the JVM are not affected.
+ */
+
+public class SolveCancelledException
+    extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final boolean deadlinePassed;
+
+    /**
+     * Creates an exception for a cancelled solve.
+     *
+     * @param solver           the name of the solver
+     * @param deadlinePassed   <code>true</code> if the solve was
+     *                         cancelled because its deadline passed
+     */
+    public SolveCancelledException(String solver, boolean deadlinePassed)
+    {
+        super("Solver " + solver + (deadlinePassed ? " ran past its deadline" : " was cancelled"));
+        this.deadlinePassed = deadlinePassed;
+    }
+
+    /**
+     * Returns whether the solve was cancelled because its deadline
+     * passed, rather than explicitly.
+     *
+     * @return   <code>true</code> if the deadline passed
+     */
+    public boolean isDeadlinePassed()
+    {
+        return deadlinePassed;
+    }
+}
@@ -0,0 +1,59 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// a whole solve, from the start of the root task to its result
+@Name("amazed.Solve")
+@Label("Solve")
+@Category({ "Amazed", "Solver" })
+@Description("A search of a maze by a solver, from start to result")
+class SolveEvent extends Event
+{
+    @Label("Maze")
+    String maze;
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Goal Found")
+    boolean found;
+
+    @Label("Path Length")
+    int pathLength;
+
+    @Label("Expanded Nodes")
+    long expandedNodes;
+
+    @Label("Forks")
+    long forks;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    // end the solve of maze, which found path (or null), and commit
+    // the event if it is recorded
+    void record(Maze maze, SolveMetrics metrics, List<Integer> path)
+    {
+        end();
+        if (shouldCommit()) {
+            this.maze = maze.getName();
+            this.solver = metrics.getSolver();
+            this.found = path != null;
+            this.pathLength = path == null ? 0 : path.size();
+            this.expandedNodes = metrics.getExpandedNodes();
+            this.forks = metrics.getForks();
+            this.allocated = metrics.getAllocatedBytes();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package amazed.solver;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>SolveMetrics</code> counts what happens during one solve:
+ * nodes expanded, visits of nodes already visited, forked tasks,
+ * joins and the time spent waiting in them, the deepest frontier,
+ * the players currently on the maze, and memory: the bytes allocated
+ * and the largest estimated size of the search structures (see
+ * {@link MemoryBudget}).
+ * <p>
+ * All the tasks of a solve share the same object. Counters are
+ * striped (<code>LongAdder</code> and <code>LongAccumulator</code>),
+ * so that tasks running in parallel update them without contending
+ * on a single memory location; reading a value sums the stripes, and
+ * is thus only exact once the solve has finished.
+ */
+
+public class SolveMetrics
+{
+    private final String solver;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean finished;
+    private volatile boolean found;
+
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder forks = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder joinWaitNanos = new LongAdder();
+    private final LongAdder players = new LongAdder();
+    private final LongAccumulator maxFrontier = new LongAccumulator(Math::max, 0);
+    private final LongAdder allocated = new LongAdder();
+    private final LongAccumulator maxRetained = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates empty metrics for a solve by the solver called
+     * <code>solver</code>.
+     *
+     * @param solver   the name of the solver
+     */
+    public SolveMetrics(String solver)
+    {
+        this.solver = solver;
+    }
+
+    void started()
+    {
+        startNanos = System.nanoTime();
+    }
+
+    void finished(boolean found)
+    {
+        this.found = found;
+        endNanos = System.nanoTime();
+        finished = true;
+    }
+
+    void expanded()
+    {
+        expanded.increment();
+    }
+
+    void expanded(long nodes)
+    {
+        expanded.add(nodes);
+    }
+
+    void duplicate()
+    {
+        duplicates.increment();
+    }
+
+    void forked()
+    {
+        forks.increment();
+    }
+
+    void joined(long waitNanos)
+    {
+        joins.increment();
+        joinWaitNanos.add(waitNanos);
+    }
+
+    void playerAdded()
+    {
+        players.increment();
+    }
+
+    void playerRemoved()
+    {
+        players.decrement();
+    }
+
+    void frontier(int size)
+    {
+        maxFrontier.accumulate(size);
+    }
+
+    void allocated(long bytes)
+    {
+        allocated.add(bytes);
+    }
+
+    void retained(long bytes)
+    {
+        maxRetained.accumulate(bytes);
+    }
+
+    /**
+     * Returns the name of the solver.
+     *
+     * @return   the name of the solver that is or was solving
+     */
+    public String getSolver()
+    {
+        return solver;
+    }
+
+    /**
+     * Tests whether the solve has finished.
+     *
+     * @return   <code>true</code> if the solve has finished;
+     *           <code>false</code> if it is still running
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Tests whether the solve found a goal.
+     *
+     * @return   <code>true</code> if the solve finished with a path to a goal
+     */
+    public boolean isFound()
+    {
+        return found;
+    }
+
+    /**
+     * Returns the time elapsed since the solve started, up to its end
+     * if it has finished.
+     *
+     * @return   the duration of the solve, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        if (startNanos == 0)
+            return 0;
+        return (finished ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    /**
+     * Returns the number of nodes expanded, that is, whose
+     * neighbors have been looked up.
+     *
+     * @return   the number of expanded nodes
+     */
+    public long getExpandedNodes()
+    {
+        return expanded.sum();
+    }
+
+    /**
+     * Returns the number of times a node was reached that had been
+     * visited already: by the sequential solver, nodes taken from the
+     * frontier after they were visited; by the parallel solver,
+     * neighbors that another task of the solve had claimed first; by
+     * <code>jps</code>, jump points taken from the open list after
+     * they were closed.
+     *
+     * @return   the number of visits of already visited nodes
+     */
+    public long getDuplicateVisits()
+    {
+        return duplicates.sum();
+    }
+
+    /**
+     * Returns the number of tasks forked.
+     *
+     * @return   the number of forked tasks
+     */
+    public long getForks()
+    {
+        return forks.sum();
+    }
+
+    /**
+     * Returns the number of joins of forked tasks.
+     *
+     * @return   the number of joins
+     */
+    public long getJoins()
+    {
+        return joins.sum();
+    }
+
+    /**
+     * Returns the total time tasks spent in joins, waiting for, or
+     * running, the tasks they forked.
+     *
+     * @return   the time spent in joins, in nanoseconds
+     */
+    public long getJoinWaitNanos()
+    {
+        return joinWaitNanos.sum();
+    }
+
+    /**
+     * Returns the largest size reached by the frontier of a task.
+     *
+     * @return   the largest number of nodes waiting in a frontier
+     */
+    public long getMaxFrontier()
+    {
+        return maxFrontier.get();
+    }
+
+    /**
+     * Returns the number of players of the solve currently on the
+     * maze.
+     *
+     * @return   the number of active players
+     */
+    public long getActivePlayers()
+    {
+        return players.sum();
+    }
+
+    /**
+     * Returns the number of bytes allocated on the heap by the tasks
+     * of the solve, as measured by the JVM for their threads.
+     *
+     * @return   the bytes allocated; <code>0</code> if the JVM
+     *           doesn't measure allocation per thread
+     */
+    public long getAllocatedBytes()
+    {
+        return allocated.sum();
+    }
+
+    /**
+     * Returns the largest estimated size of the search structures
+     * &mdash; visited set, predecessor map and frontier &mdash;
+     * checked during the solve.
+     *
+     * @return   the largest estimate, in bytes
+     */
+    public long getPeakRetainedBytes()
+    {
+        return maxRetained.get();
+    }
+}
@@ -0,0 +1,318 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <code>SolveScheduler</code> runs concurrent solves in one JVM, so
+ * that large solves cannot starve small, latency-sensitive ones of
+ * workers.
+ * <p>
+ * Every solve is submitted with a {@link Priority}. Each priority has
+ * its own <code>ForkJoinPool</code>, whose parallelism is its share
+ * of the scheduler's parallelism in proportion to the priority's
+ * weight, rounded up: tasks forked by a solve stay in the
+ * pool of its priority, and the workers of the different pools share
+ * the processors. Within a priority:
+ * <ul>
+ * <li>at most <code>maxSolves</code> solves run at once; the others
+ *     wait for admission in submission order;</li>
+ * <li>a {@link ForkJoinSolver} has at most <code>maxTasks</code>
+ *     forked tasks at once (see
+ *     {@link ForkJoinSolver#setTaskQuota(int)}), by default four per
+ *     worker of the pool, so that one solve leaves workers to the
+ *     others.</li>
+ * </ul>
+ * A solve's deadline runs from its submission, including the time it
+ * waits for admission. Cancelling the future of a solve, or its
+ * deadline passing, removes it from the queue at once if it is
+ * waiting; if it runs, its tasks are cancelled as described in
+ * {@link Solvers#solveAsync(RecursiveTask, ForkJoinPool, long)}, and
+ * it keeps its place among the running solves until its solver
+ * returns.
+ */
+
+public class SolveScheduler
+{
+    /**
+     * The priority classes of solves.
+     */
+    public enum Priority
+    {
+        /**
+         * Interactive, latency-sensitive solves.
+         */
+        HIGH(4),
+        /**
+         * Ordinary solves.
+         */
+        NORMAL(2),
+        /**
+         * Batch solves, which may wait.
+         */
+        LOW(1);
+
+        private final int weight;
+
+        Priority(int weight)
+        {
+            this.weight = weight;
+        }
+
+        /**
+         * Returns the weight of the priority in the sharing of
+         * workers.
+         *
+         * @return   the relative share of workers of the priority
+         */
+        public int getWeight()
+        {
+            return weight;
+        }
+    }
+
+    // the pool and admission queue of a priority
+    private static class Lane
+    {
+        final ForkJoinPool pool;
+        final int maxSolves;
+        final int defaultTasks;
+        private int running;
+        // starts of waiting solves, which return false for a solve
+        // that needs no more running
+        private final ArrayDeque<BooleanSupplier> waiting = new ArrayDeque<>();
+
+        Lane(Priority priority, int parallelism, int maxSolves)
+        {
+            String prefix = "amazed-" + priority.name().toLowerCase(Locale.ROOT) + "-";
+            this.pool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(prefix + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+            this.maxSolves = maxSolves;
+            this.defaultTasks = 4 * parallelism;
+        }
+
+        // start a solve now if it may be admitted, later otherwise
+        void admit(BooleanSupplier start)
+        {
+            synchronized (this) {
+                if (running >= maxSolves) {
+                    waiting.add(start);
+                    return;
+                }
+                running++;
+            }
+            if (!start.getAsBoolean())
+                finished();
+        }
+
+        // a solve given to admit needs no more running: forget it if it
+        // still waits
+        synchronized void withdraw(BooleanSupplier start)
+        {
+            waiting.remove(start);
+        }
+
+        // a solve admitted by admit finished: admit the next one
+        void finished()
+        {
+            while (true) {
+                BooleanSupplier next;
+                synchronized (this) {
+                    next = waiting.poll();
+                    if (next == null) {
+                        running--;
+                        return;
+                    }
+                }
+                if (next.getAsBoolean())
+                    return;
+            }
+        }
+
+        synchronized int running()
+        {
+            return running;
+        }
+
+        synchronized int waiting()
+        {
+            return waiting.size();
+        }
+    }
+
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+
+    /**
+     * Creates a scheduler sharing the available processors, which
+     * runs up to twice as many solves of each priority at once.
+     */
+    public SolveScheduler()
+    {
+        this(Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param parallelism   the number of workers shared by all
+     *                      priorities, at least 1
+     * @param maxSolves     the largest number of solves of each
+     *                      priority running at once, at least 1
+     * @throws IllegalArgumentException if a parameter is less than 1
+     */
+    public SolveScheduler(int parallelism, int maxSolves)
+    {
+        if (parallelism < 1 || maxSolves < 1)
+            throw new IllegalArgumentException("Invalid scheduler parallelism " + parallelism
+                                               + " or solves " + maxSolves);
+        int totalWeight = 0;
+        for (Priority priority: Priority.values())
+            totalWeight += priority.getWeight();
+        for (Priority priority: Priority.values()) {
+            int share = (parallelism * priority.getWeight() + totalWeight - 1) / totalWeight;
+            lanes.put(priority, new Lane(priority, share, maxSolves));
+        }
+    }
+
+    /**
+     * Submits a solve with the default task quota of its priority.
+     *
+     * @param solverName      the name of a solver, as accepted by
+     *                        {@link Solvers#create(String, Maze, int)}
+     * @param maze            the maze to be searched
+     * @param forkAfter       passed to <code>Solvers.create</code>
+     * @param priority        the priority of the solve
+     * @param timeoutMillis   the time allowed to the solve from now, in
+     *                        milliseconds; <code>0</code> or less for
+     *                        no deadline
+     * @return                the future of the path found, as in
+     *                        {@link Solvers#solveAsync(RecursiveTask, ForkJoinPool, long)}
+     */
+    public CompletableFuture<List<Integer>> submit(String solverName, Maze maze, int forkAfter,
+                                                   Priority priority, long timeoutMillis)
+    {
+        return submit(solverName, maze, forkAfter, priority, lanes.get(priority).defaultTasks, timeoutMillis);
+    }
+
+    /**
+     * Submits a solve.
+     *
+     * @param solverName      the name of a solver, as accepted by
+     *                        {@link Solvers#create(String, Maze, int)}
+     * @param maze            the maze to be searched
+     * @param forkAfter       passed to <code>Solvers.create</code>
+     * @param priority        the priority of the solve
+     * @param maxTasks        the largest number of tasks that a parallel
+     *                        solver forks at once; <code>0</code> or
+     *                        less for no limit
+     * @param timeoutMillis   the time allowed to the solve from now, in
+     *                        milliseconds; <code>0</code> or less for
+     *                        no deadline
+     * @return                the future of the path found, as in
+     *                        {@link Solvers#solveAsync(RecursiveTask, ForkJoinPool, long)}
+     * @throws IllegalArgumentException if <code>solverName</code> is not a known solver
+     */
+    public CompletableFuture<List<Integer>> submit(String solverName, Maze maze, int forkAfter,
+                                                   Priority priority, int maxTasks, long timeoutMillis)
+    {
+        RecursiveTask<List<Integer>> solver = Solvers.create(solverName, maze, forkAfter);
+        if (solver instanceof ForkJoinSolver)
+            ((ForkJoinSolver) solver).setTaskQuota(maxTasks);
+        SolveCancellation cancellation = new SolveCancellation();
+        if (solver instanceof SequentialSolver)
+            ((SequentialSolver) solver).setCancellation(cancellation);
+        Lane lane = lanes.get(priority);
+        CompletableFuture<List<Integer>> future = new CompletableFuture<>();
+        Solvers.completeAtDeadline(future, solverName, timeoutMillis);
+        BooleanSupplier start = () -> {
+            // cancelled, or past its deadline, while waiting
+            if (future.isDone())
+                return false;
+            lane.pool.execute(() -> {
+                try {
+                    future.complete(solver.invoke());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    // the solve holds its place until its solver returns,
+                    // even if its future completed before
+                    lane.finished();
+                }
+            });
+            return true;
+        };
+        lane.admit(start);
+        // however the future completes, the solve's tasks can stop, and
+        // it needs no place in the queue
+        future.whenComplete((path, e) -> {
+            cancellation.cancel();
+            lane.withdraw(start);
+        });
+        return future;
+    }
+
+    /**
+     * Returns the number of workers of a priority.
+     *
+     * @param priority   a priority
+     * @return           the parallelism of the pool of the priority
+     */
+    public int getParallelism(Priority priority)
+    {
+        return lanes.get(priority).pool.getParallelism();
+    }
+
+    /**
+     * Returns the number of solves of a priority running.
+     *
+     * @param priority   a priority
+     * @return           the number of admitted solves whose solver
+     *                   hasn't returned yet
+     */
+    public int getRunning(Priority priority)
+    {
+        return lanes.get(priority).running();
+    }
+
+    /**
+     * Returns the number of solves of a priority waiting for admission.
+     *
+     * @param priority   a priority
+     * @return           the number of solves in the queue of the priority
+     */
+    public int getWaiting(Priority priority)
+    {
+        return lanes.get(priority).waiting();
+    }
+
+    /**
+     * Stops the workers of all priorities, waiting at most
+     * <code>timeoutMillis</code> for the solves running.
+     *
+     * @param timeoutMillis   the longest time to wait, in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown(long timeoutMillis)
+    throws InterruptedException
+    {
+        for (Lane lane: lanes.values())
+            lane.pool.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Lane lane: lanes.values())
+            lane.pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
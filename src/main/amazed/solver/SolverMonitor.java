@@ -0,0 +1,248 @@
+package amazed.solver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <code>SolverMonitor</code> publishes the {@link SolveMetrics} of
+ * the solves in this JVM as an MBean, named
+ * <code>amazed.solver:type=SolverMonitor</code> in the platform
+ * MBean server. It shows the metrics of the solves currently running
+ * and those of the last solve that finished.
+ * <p>
+ * Solvers report to the single instance returned by
+ * <code>getInstance</code>, which registers the MBean the first time
+ * it is called.
+ */
+
+public class SolverMonitor
+    implements SolverMonitorMBean
+{
+    /**
+     * The name under which the monitor is registered.
+     */
+    public static final String OBJECT_NAME = "amazed.solver:type=SolverMonitor";
+
+    private static final SolverMonitor INSTANCE = register(new SolverMonitor());
+
+    private final Set<SolveMetrics> active = ConcurrentHashMap.newKeySet();
+    private volatile SolveMetrics last;
+    private volatile long completed;
+
+    private SolverMonitor()
+    {
+    }
+
+    /**
+     * Returns the monitor of this JVM.
+     *
+     * @return   the single, registered monitor
+     */
+    public static SolverMonitor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private static SolverMonitor register(SolverMonitor monitor)
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            // solving doesn't depend on monitoring
+            System.err.println("Solver metrics not published: " + e);
+        }
+        return monitor;
+    }
+
+    /**
+     * Records the start of a solve.
+     *
+     * @param metrics   the metrics of the solve being started
+     */
+    public void started(SolveMetrics metrics)
+    {
+        metrics.started();
+        active.add(metrics);
+    }
+
+    /**
+     * Records the end of a solve, which becomes the last solve.
+     *
+     * @param metrics   the metrics of the solve that finished
+     * @param found     whether the solve found a goal
+     */
+    public void finished(SolveMetrics metrics, boolean found)
+    {
+        metrics.finished(found);
+        active.remove(metrics);
+        synchronized (this) {
+            completed += 1;
+            last = metrics;
+        }
+    }
+
+    /**
+     * Returns the metrics of the last solve that finished.
+     *
+     * @return   the metrics of the last solve, or <code>null</code> if none has finished
+     */
+    public SolveMetrics getLast()
+    {
+        return last;
+    }
+
+    private long live(ToLongFunction<SolveMetrics> value)
+    {
+        long sum = 0;
+        for (SolveMetrics metrics: active)
+            sum += value.applyAsLong(metrics);
+        return sum;
+    }
+
+    private long last(ToLongFunction<SolveMetrics> value)
+    {
+        SolveMetrics metrics = last;
+        return metrics == null ? 0 : value.applyAsLong(metrics);
+    }
+
+    private static long millis(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public int getActiveSolves()
+    {
+        return active.size();
+    }
+
+    @Override
+    public long getCompletedSolves()
+    {
+        return completed;
+    }
+
+    @Override
+    public long getLiveExpandedNodes()
+    {
+        return live(SolveMetrics::getExpandedNodes);
+    }
+
+    @Override
+    public long getLiveDuplicateVisits()
+    {
+        return live(SolveMetrics::getDuplicateVisits);
+    }
+
+    @Override
+    public long getLiveForks()
+    {
+        return live(SolveMetrics::getForks);
+    }
+
+    @Override
+    public long getLiveJoins()
+    {
+        return live(SolveMetrics::getJoins);
+    }
+
+    @Override
+    public long getLiveJoinWaitMillis()
+    {
+        return millis(live(SolveMetrics::getJoinWaitNanos));
+    }
+
+    @Override
+    public long getLiveMaxFrontier()
+    {
+        long max = 0;
+        for (SolveMetrics metrics: active)
+            max = Math.max(max, metrics.getMaxFrontier());
+        return max;
+    }
+
+    @Override
+    public long getLiveActivePlayers()
+    {
+        return live(SolveMetrics::getActivePlayers);
+    }
+
+    @Override
+    public long getLiveAllocatedBytes()
+    {
+        return live(SolveMetrics::getAllocatedBytes);
+    }
+
+    @Override
+    public String getLastSolver()
+    {
+        SolveMetrics metrics = last;
+        return metrics == null ? null : metrics.getSolver();
+    }
+
+    @Override
+    public boolean isLastFound()
+    {
+        SolveMetrics metrics = last;
+        return metrics != null && metrics.isFound();
+    }
+
+    @Override
+    public long getLastElapsedMillis()
+    {
+        return millis(last(SolveMetrics::getElapsedNanos));
+    }
+
+    @Override
+    public long getLastExpandedNodes()
+    {
+        return last(SolveMetrics::getExpandedNodes);
+    }
+
+    @Override
+    public long getLastDuplicateVisits()
+    {
+        return last(SolveMetrics::getDuplicateVisits);
+    }
+
+    @Override
+    public long getLastForks()
+    {
+        return last(SolveMetrics::getForks);
+    }
+
+    @Override
+    public long getLastJoins()
+    {
+        return last(SolveMetrics::getJoins);
+    }
+
+    @Override
+    public long getLastJoinWaitMillis()
+    {
+        return millis(last(SolveMetrics::getJoinWaitNanos));
+    }
+
+    @Override
+    public long getLastMaxFrontier()
+    {
+        return last(SolveMetrics::getMaxFrontier);
+    }
+
+    @Override
+    public long getLastAllocatedBytes()
+    {
+        return last(SolveMetrics::getAllocatedBytes);
+    }
+
+    @Override
+    public long getLastPeakRetainedBytes()
+    {
+        return last(SolveMetrics::getPeakRetainedBytes);
+    }
+}
@@ -0,0 +1,53 @@
+package amazed.solver;
+
+/**
+ * <code>SolverMonitorMBean</code> is the management interface of
+ * {@link SolverMonitor}. Attributes starting with <code>Live</code>
+ * add up the solves currently running; those starting with
+ * <code>Last</code> describe the last solve that finished.
+ */
+
+public interface SolverMonitorMBean
+{
+    int getActiveSolves();
+
+    long getCompletedSolves();
+
+    long getLiveExpandedNodes();
+
+    long getLiveDuplicateVisits();
+
+    long getLiveForks();
+
+    long getLiveJoins();
+
+    long getLiveJoinWaitMillis();
+
+    long getLiveMaxFrontier();
+
+    long getLiveActivePlayers();
+
+    long getLiveAllocatedBytes();
+
+    String getLastSolver();
+
+    boolean isLastFound();
+
+    long getLastElapsedMillis();
+
+    long getLastExpandedNodes();
+
+    long getLastDuplicateVisits();
+
+    long getLastForks();
+
+    long getLastJoins();
+
+    long getLastJoinWaitMillis();
+
+    long getLastMaxFrontier();
+
+    long getLastAllocatedBytes();
+
+    long getLastPeakRetainedBytes();
+}
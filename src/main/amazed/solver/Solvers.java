@@ -0,0 +1,175 @@
+package amazed.solver;
+
+import amazed.cluster.ClusterSolver;
+import amazed.maze.Maze;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>Solvers</code> creates solver instances by name, so that
+ * applications can select a solver from the command line.
+ * <p>
+ * The recognized names are <code>sequential</code>
+ * ({@link SequentialSolver}), <code>parallel</code>
+ * ({@link ForkJoinSolver}), <code>jps</code>
+ * ({@link JumpPointSolver}), <code>bitbfs</code>
+ * ({@link BitParallelSolver}), <code>hpa</code>
+ * ({@link HierarchicalSolver}), and <code>cluster</code>
+ * ({@link ClusterSolver}).
+ * <p>
+ * Method <code>solveAsync</code> runs a solver without blocking the
+ * caller, and abandons the solve when its future is cancelled or its
+ * deadline passes.
+ */
+
+public class Solvers
+{
+    public static final String SEQUENTIAL = "sequential";
+    public static final String PARALLEL = "parallel";
+    public static final String JUMP_POINT = "jps";
+    public static final String BIT_PARALLEL = "bitbfs";
+    public static final String HIERARCHICAL = "hpa";
+    public static final String CLUSTER = "cluster";
+
+    // completes the futures of solves whose deadline passed, also
+    // when their solver doesn't check its cancellation
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlines();
+
+    private Solvers()
+    {
+    }
+
+    private static ScheduledThreadPoolExecutor deadlines()
+    {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "amazed-solve-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // solves usually end before their deadline
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Returns the names of all known solvers.
+     *
+     * @return   the names accepted by <code>create</code>
+     */
+    public static List<String> names()
+    {
+        return List.of(SEQUENTIAL, PARALLEL, JUMP_POINT, BIT_PARALLEL, HIERARCHICAL, CLUSTER);
+    }
+
+    /**
+     * Returns whether a solver always returns a shortest path from
+     * the start node to a goal, when there is one.
+     *
+     * @param name   the name of the solver
+     * @return       <code>true</code> for <code>jps</code> and
+     *               <code>bitbfs</code>; <code>false</code> otherwise
+     */
+    public static boolean isShortest(String name)
+    {
+        return name.equals(JUMP_POINT) || name.equals(BIT_PARALLEL);
+    }
+
+    /**
+     * Creates a solver searching in <code>maze</code>.
+     *
+     * @param name        the name of the solver
+     * @param maze        the maze to be searched
+     * @param forkAfter   the number of steps after which a parallel
+     *                    solver forks; for the cluster solver, the
+     *                    number of worker processes (at least 1);
+     *                    ignored by the other solvers
+     * @return            a new solver instance
+     * @throws IllegalArgumentException if <code>name</code> is not a known solver
+     */
+    public static RecursiveTask<List<Integer>> create(String name, Maze maze, int forkAfter)
+    {
+        switch (name) {
+        case SEQUENTIAL:
+            return new SequentialSolver(maze);
+        case PARALLEL:
+            return new ForkJoinSolver(maze, forkAfter);
+        case JUMP_POINT:
+            return new JumpPointSolver(maze);
+        case BIT_PARALLEL:
+            return new BitParallelSolver(maze);
+        case HIERARCHICAL:
+            return new HierarchicalSolver(maze);
+        case CLUSTER:
+            return new ClusterSolver(maze, Math.max(1, forkAfter));
+        default:
+            throw new IllegalArgumentException("Unknown solver " + name);
+        }
+    }
+
+    /**
+     * Starts a solver in a pool, and returns the future of its path
+     * without waiting for it.
+     * <p>
+     * Cancelling the future cancels the solve, and so does its
+     * deadline passing: the future is then completed exceptionally
+     * with a {@link SolveCancelledException}. The solvers returned by
+     * <code>create</code> check their {@link SolveCancellation} while
+     * searching, and release their threads soon after, at the points
+     * listed by <code>SolveCancellation</code>. The future of a solver
+     * that checks no cancellation is completed at the deadline all the
+     * same, while its threads finish the search.
+     *
+     * @param solver          a solver, as returned by <code>create</code>
+     * @param pool            the pool running the solver
+     * @param timeoutMillis   the time allowed to the solve, in
+     *                        milliseconds; <code>0</code> or less for
+     *                        no deadline
+     * @return                the future of the path found by
+     *                        <code>solver</code>, <code>null</code> if
+     *                        there is none; completed exceptionally
+     *                        with the exception thrown by the solver,
+     *                        if any
+     */
+    public static CompletableFuture<List<Integer>> solveAsync(RecursiveTask<List<Integer>> solver,
+                                                              ForkJoinPool pool, long timeoutMillis)
+    {
+        SolveCancellation cancellation = new SolveCancellation(timeoutMillis, TimeUnit.MILLISECONDS);
+        String name = solver.getClass().getSimpleName();
+        if (solver instanceof SequentialSolver) {
+            ((SequentialSolver) solver).setCancellation(cancellation);
+            name = ((SequentialSolver) solver).getMetrics().getSolver();
+        }
+        CompletableFuture<List<Integer>> future = new CompletableFuture<>();
+        completeAtDeadline(future, name, timeoutMillis);
+        // however the future completes, the solve's tasks can stop
+        future.whenComplete((path, e) -> cancellation.cancel());
+        pool.execute(() -> {
+            if (future.isDone())
+                return;
+            try {
+                future.complete(solver.invoke());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // complete future with a SolveCancelledException after timeoutMillis,
+    // unless it is already complete; nothing if timeoutMillis <= 0
+    static void completeAtDeadline(CompletableFuture<?> future, String solverName, long timeoutMillis)
+    {
+        if (timeoutMillis <= 0)
+            return;
+        ScheduledFuture<?> deadline = DEADLINES.schedule(
+            () -> future.completeExceptionally(new SolveCancelledException(solverName, true)),
+            timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((path, e) -> deadline.cancel(false));
+    }
+}